@@ -0,0 +1,294 @@
+package main;
+/*****************************************************************************************
+ * @file  BatchScan.java
+ *
+ * @author   John Miller
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.function.Consumer;
+
+/*****************************************************************************************
+ * The BatchScan class runs simple analytical queries over a table in vectorized mode:
+ * the table is read ColumnBatch.SIZE tuples at a time into primitive column vectors, the
+ * filters refine a selection vector batch by batch, and the aggregates loop over the
+ * selected positions.  Compared to Table.select with a Predicate, a filter costs one
+ * primitive comparison per value rather than a lambda call and an unboxing, and only
+ * the columns used are read.
+ * <pre>
+ *     movie.batchScan ().where ("year", ">=", 1970).where ("year", "<", 1990).sum ("length")
+ * </pre>
+ */
+public class BatchScan
+{
+    /** The name of the table
+     */
+    private final String name;
+
+    /** The attributes, domains and key of the table
+     */
+    private final String [] attribute;
+    private final Class [] domain;
+    private final String [] key;
+
+    /** The tuples of the table
+     */
+    private final List <Comparable []> tuples;
+
+    /** The filters to apply to each batch, in order
+     */
+    private final List <Consumer <ColumnBatch>> filters = new ArrayList <> ();
+
+    /** The columns the filters use
+     */
+    private final List <Integer> filterCols = new ArrayList <> ();
+
+    /*************************************************************************************
+     * Construct a batch scan over the given tuples.
+     * @param _name       the name of the table
+     * @param _attribute  the attributes of the table
+     * @param _domain     the domains of the table
+     * @param _key        the key of the table
+     * @param _tuples     the tuples of the table
+     */
+    BatchScan (String _name, String [] _attribute, Class [] _domain, String [] _key, List <Comparable []> _tuples)
+    {
+        name      = _name;
+        attribute = _attribute;
+        domain    = _domain;
+        key       = _key;
+        tuples    = _tuples;
+    } // constructor
+
+    /*************************************************************************************
+     * Add the filter "attr op value", where op is one of ==, !=, <, <=, >, >=.
+     * @param attr   the attribute to compare
+     * @param op     the comparison operator
+     * @param value  the value to compare with (of the attribute's domain)
+     * @return  this batch scan
+     * @throws IllegalArgumentException  for an unknown attribute or operator, or a value
+     *                                   that does not match the domain
+     */
+    public BatchScan where (String attr, String op, Comparable value)
+    {
+        var j = col (attr);
+        var o = Arrays.asList (ColumnBatch.OPS).indexOf (op);
+        if (o < 0) throw new IllegalArgumentException ("BatchScan: unknown operator " + op);
+
+        if (EncodedColumn.isIntegral (domain [j])) {
+            if (! EncodedColumn.isIntegral (value.getClass ())) throw mismatch (attr, value);
+            var x = ((Number) value).longValue ();
+            filters.add (b -> b.filter (j, o, x));
+        } else if (domain [j] == Double.class || domain [j] == Float.class) {
+            if (! (value instanceof Double || value instanceof Float)) throw mismatch (attr, value);
+            var x = ((Number) value).doubleValue ();
+            filters.add (b -> b.filter (j, o, x));
+        } else {
+            if (value.getClass () != domain [j]) throw mismatch (attr, value);
+            filters.add (b -> b.filter (j, o, value));
+        } // if
+        filterCols.add (j);
+        return this;
+    } // where
+
+    /*************************************************************************************
+     * Add the filter "attr BETWEEN lo AND hi" (both bounds inclusive).
+     * @param attr  the attribute to compare
+     * @param lo    the lower bound (of the attribute's domain)
+     * @param hi    the upper bound (of the attribute's domain)
+     * @return  this batch scan
+     * @throws IllegalArgumentException  for an unknown attribute, or bounds that do not
+     *                                   match the domain
+     */
+    public BatchScan between (String attr, Comparable lo, Comparable hi)
+    {
+        var j = col (attr);
+        if (EncodedColumn.isIntegral (domain [j])) {
+            if (! EncodedColumn.isIntegral (lo.getClass ())) throw mismatch (attr, lo);
+            if (! EncodedColumn.isIntegral (hi.getClass ())) throw mismatch (attr, hi);
+            var x = ((Number) lo).longValue ();
+            var y = ((Number) hi).longValue ();
+            filters.add (b -> b.between (j, x, y));
+        } else if (domain [j] == Double.class || domain [j] == Float.class) {
+            if (! (lo instanceof Double || lo instanceof Float)) throw mismatch (attr, lo);
+            if (! (hi instanceof Double || hi instanceof Float)) throw mismatch (attr, hi);
+            var x = ((Number) lo).doubleValue ();
+            var y = ((Number) hi).doubleValue ();
+            filters.add (b -> b.between (j, x, y));
+        } else {
+            where (attr, ">=", lo);
+            return where (attr, "<=", hi);
+        } // if
+        filterCols.add (j);
+        return this;
+    } // between
+
+    /*************************************************************************************
+     * Add the filter "attr IN (values)".  Integer attributes compare each value with
+     * all the given values (meant for small sets), others probe a hash set.
+     * @param attr    the attribute to compare
+     * @param values  the values (of the attribute's domain)
+     * @return  this batch scan
+     * @throws IllegalArgumentException  for an unknown attribute, or a value that does
+     *                                   not match the domain
+     */
+    public BatchScan in (String attr, Comparable ... values)
+    {
+        var j = col (attr);
+        if (EncodedColumn.isIntegral (domain [j])) {
+            var xs = new long [values.length];
+            for (int k = 0; k < xs.length; k++) {
+                if (! EncodedColumn.isIntegral (values [k].getClass ())) throw mismatch (attr, values [k]);
+                xs [k] = ((Number) values [k]).longValue ();
+            } // for
+            filters.add (b -> b.in (j, xs));
+        } else {
+            for (var v : values) if (v.getClass () != domain [j]) throw mismatch (attr, v);
+            var xs = new HashSet <Comparable> (Arrays.asList (values));
+            if (domain [j] == Double.class || domain [j] == Float.class) {
+                filters.add (b -> {                                  // real columns hold no objects
+                    var m = 0;
+                    for (int k = 0; k < b.n; k++) {
+                        var i = b.sel [k];
+                        if (! b.nulls [j][i] && xs.contains (boxReal (domain [j], b.doubles [j][i]))) b.sel [m++] = i;
+                    } // for
+                    b.n = m;
+                });
+            } else {
+                filters.add (b -> b.in (j, xs));
+            } // if
+        } // if
+        filterCols.add (j);
+        return this;
+    } // in
+
+    /*************************************************************************************
+     * Return the number of tuples satisfying the filters.
+     * @return  the count
+     */
+    public long count ()
+    {
+        var c = new long [1];
+        run (-1, b -> c [0] += b.n);
+        return c [0];
+    } // count
+
+    /*************************************************************************************
+     * Return the sum of the attribute over the tuples satisfying the filters: a Long for
+     * integer attributes, else a Double.
+     * @param attr  the numeric attribute to sum
+     * @return  the sum
+     */
+    public Comparable sum (String attr)
+    {
+        var j = col (attr);
+        if (EncodedColumn.isIntegral (domain [j])) {
+            var s = new long [1];
+            run (j, b -> s [0] += b.sumLong (j));
+            return s [0];
+        } // if
+        requireReal (attr, j);
+        var s = new double [1];
+        run (j, b -> s [0] += b.sumDouble (j));
+        return s [0];
+    } // sum
+
+    /*************************************************************************************
+     * Return the average of the attribute over the tuples satisfying the filters (nulls
+     * are skipped), or null if there are none.
+     * @param attr  the numeric attribute to average
+     * @return  the average
+     */
+    public Double avg (String attr)
+    {
+        var j = col (attr);
+        if (! EncodedColumn.isIntegral (domain [j])) requireReal (attr, j);
+        var s = new double [2];
+        run (j, b -> {
+            s [0] += (b.longs [j] != null) ? b.sumLong (j) : b.sumDouble (j);
+            s [1] += b.countNonNull (j);
+        });
+        return (s [1] == 0) ? null : s [0] / s [1];
+    } // avg
+
+    /*************************************************************************************
+     * Return the tuples satisfying the filters as a table.
+     * @return  the table of qualifying tuples
+     */
+    public Table toTable ()
+    {
+        var rows = new ArrayList <Comparable []> ();
+        run (-1, b -> { for (int k = 0; k < b.n; k++) rows.add (tuples.get (b.start + b.sel [k])); });
+        return new Table (name + "_b", attribute, domain, key, rows);
+    } // toTable
+
+    /*************************************************************************************
+     * Load the table batch by batch, apply the filters and pass each batch with some
+     * qualifying tuples to the sink.
+     * @param aggCol  the column the sink uses (-1 for none)
+     * @param sink    what to do with each filtered batch
+     */
+    private void run (int aggCol, Consumer <ColumnBatch> sink)
+    {
+        var cols = new int [filterCols.size () + (aggCol >= 0 ? 1 : 0)];
+        for (int k = 0; k < filterCols.size (); k++) cols [k] = filterCols.get (k);
+        if (aggCol >= 0) cols [cols.length - 1] = aggCol;
+
+        var b = new ColumnBatch (domain, cols);
+        for (int start = 0; start < tuples.size (); start += ColumnBatch.SIZE) {
+            b.load (tuples, start);
+            for (int f = 0; f < filters.size () && b.n > 0; f++) filters.get (f).accept (b);
+            if (b.n > 0) sink.accept (b);
+        } // for
+    } // run
+
+    /*************************************************************************************
+     * Return the column position of the attribute.
+     * @param attr  the attribute name
+     * @return  its column position
+     * @throws IllegalArgumentException  if there is no such attribute
+     */
+    private int col (String attr)
+    {
+        for (int j = 0; j < attribute.length; j++) if (attribute [j].equals (attr)) return j;
+        throw new IllegalArgumentException ("BatchScan: attribute " + attr + " does not exist");
+    } // col
+
+    /*************************************************************************************
+     * Check that column j is a real (Double or Float) column.
+     * @param attr  the attribute name
+     * @param j     its column position
+     * @throws IllegalArgumentException  if it is not numeric
+     */
+    private void requireReal (String attr, int j)
+    {
+        if (domain [j] != Double.class && domain [j] != Float.class)
+            throw new IllegalArgumentException ("BatchScan: attribute " + attr + " is not numeric");
+    } // requireReal
+
+    /*************************************************************************************
+     * Box a real column value with the column's domain.
+     * @param dom  the domain (Double or Float)
+     * @param x    the value
+     * @return  the boxed value
+     */
+    private static Comparable boxReal (Class dom, double x)
+    {
+        return (dom == Float.class) ? (Comparable) (float) x : (Comparable) x;
+    } // boxReal
+
+    /*************************************************************************************
+     * Return the exception for a value that does not match the attribute's domain.
+     * @param attr   the attribute name
+     * @param value  the value
+     * @return  the exception to throw
+     */
+    private static IllegalArgumentException mismatch (String attr, Comparable value)
+    {
+        return new IllegalArgumentException ("BatchScan: " + value + " does not match the domain of " + attr);
+    } // mismatch
+
+} // BatchScan class
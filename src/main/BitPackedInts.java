@@ -0,0 +1,91 @@
+package main;
+/*****************************************************************************************
+ * @file  BitPackedInts.java
+ *
+ * @author   John Miller
+ */
+
+import java.io.Serializable;
+
+/*****************************************************************************************
+ * The BitPackedInts class stores an array of non-negative ints using only as many bits
+ * per value as the largest value needs, packed into an array of longs.
+ */
+class BitPackedInts
+      implements Serializable
+{
+    /** The number of bits per value
+     */
+    private final int width;
+
+    /** The number of values
+     */
+    private final int size;
+
+    /** The packed bits
+     */
+    private final long [] words;
+
+    /*************************************************************************************
+     * Pack the given values using the given number of bits per value.
+     * @param values  the non-negative values to pack
+     * @param _width  the number of bits per value (see bitsFor)
+     */
+    BitPackedInts (int [] values, int _width)
+    {
+        width = _width;
+        size  = values.length;
+        words = new long [(int) (((long) size * width + 63) >>> 6) + 1];
+        for (int i = 0; i < size; i++) {
+            var bit = (long) i * width;
+            var w   = (int) (bit >>> 6);
+            var o   = (int) (bit & 63);
+            words [w] |= (long) values [i] << o;
+            if (o + width > 64) words [w + 1] |= (long) values [i] >>> (64 - o);
+        } // for
+    } // constructor
+
+    /*************************************************************************************
+     * Return the i-th value.
+     * @param i  the position of the value
+     * @return  the value at position i
+     */
+    int get (int i)
+    {
+        var bit = (long) i * width;
+        var w   = (int) (bit >>> 6);
+        var o   = (int) (bit & 63);
+        var v   = words [w] >>> o;
+        if (o + width > 64) v |= words [w + 1] << (64 - o);
+        return (int) (v & ((1L << width) - 1));
+    } // get
+
+    /*************************************************************************************
+     * Return the number of bits needed to store values in the range 0 to max.
+     * @param max  the largest value to store
+     * @return  the number of bits per value
+     */
+    static int bitsFor (int max)
+    {
+        return Math.max (1, 32 - Integer.numberOfLeadingZeros (max));
+    } // bitsFor
+
+    /*************************************************************************************
+     * Return the number of bytes used by the packed values.
+     * @return  the memory size in bytes
+     */
+    long memorySize ()
+    {
+        return 8L * words.length;
+    } // memorySize
+
+    /*************************************************************************************
+     * Return the number of values.
+     * @return  the number of values
+     */
+    int size ()
+    {
+        return size;
+    } // size
+
+} // BitPackedInts class
@@ -0,0 +1,110 @@
+package main;
+/*****************************************************************************************
+ * @file  BloomFilter.java
+ *
+ * @author   John Miller
+ */
+
+import java.io.Serializable;
+
+/*****************************************************************************************
+ * The BloomFilter class provides a compact probabilistic set: mightContain never returns
+ * false for a key that was added, and returns true for a key that was not added with a
+ * probability of about 1% while no more than the capacity keys have been added.  It is
+ * used to answer key lookups and join probes that miss without touching the index.
+ */
+class BloomFilter
+      implements Serializable
+{
+    /** The number of bits per key (about 1% false positives with K hash functions)
+     */
+    private static final int BITS_PER_KEY = 10;
+
+    /** The number of hash functions
+     */
+    private static final int K = 7;
+
+    /** The bit array
+     */
+    private final long [] bits;
+
+    /** The number of bits in the bit array
+     */
+    private final long nBits;
+
+    /** The number of keys the filter is sized for
+     */
+    private final int capacity;
+
+    /** The number of keys added
+     */
+    private int count = 0;
+
+    /*************************************************************************************
+     * Construct an empty Bloom filter sized for the given number of keys.
+     * @param _capacity  the expected number of keys
+     */
+    BloomFilter (int _capacity)
+    {
+        capacity = Math.max (_capacity, 64);
+        bits     = new long [(int) (((long) capacity * BITS_PER_KEY + 63) / 64)];
+        nBits    = 64L * bits.length;
+    } // constructor
+
+    /*************************************************************************************
+     * Add a key to the filter.
+     * @param key  the key to add
+     */
+    void add (Object key)
+    {
+        var h  = mix (key.hashCode ());
+        var h1 = (int) h;
+        var h2 = (int) (h >>> 32) | 1;
+        for (int i = 0; i < K; i++) {
+            var b = Math.floorMod (h1 + (long) i * h2, nBits);
+            bits [(int) (b >>> 6)] |= 1L << b;
+        } // for
+        count++;
+    } // add
+
+    /*************************************************************************************
+     * Determine whether the key might have been added.
+     * @param key  the key to check
+     * @return  false if the key was definitely not added
+     */
+    boolean mightContain (Object key)
+    {
+        var h  = mix (key.hashCode ());
+        var h1 = (int) h;
+        var h2 = (int) (h >>> 32) | 1;
+        for (int i = 0; i < K; i++) {
+            var b = Math.floorMod (h1 + (long) i * h2, nBits);
+            if ((bits [(int) (b >>> 6)] & (1L << b)) == 0) return false;
+        } // for
+        return true;
+    } // mightContain
+
+    /*************************************************************************************
+     * Determine whether more keys have been added than the filter was sized for, so its
+     * false positive rate has degraded and it should be rebuilt larger.
+     * @return  whether the filter is over capacity
+     */
+    boolean isFull ()
+    {
+        return count > capacity;
+    } // isFull
+
+    /*************************************************************************************
+     * Spread the bits of a hash code over a long (MurmurHash3 finalizer).
+     * @param h  the hash code
+     * @return  the mixed 64-bit hash
+     */
+    static long mix (int h)
+    {
+        var z = h * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+        z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return z ^ (z >>> 33);
+    } // mix
+
+} // BloomFilter class
@@ -4,6 +4,7 @@ import java.io.*;
 import java.lang.reflect.Array;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.function.Consumer;
 
 
 import static java.lang.Math.ceil;
@@ -38,6 +39,11 @@ public class BpTreeMap <K extends Comparable <K>, V>
      */
     private static final int MID = (int) ceil (ORDER / 2.0);
 
+    /** The number of keys (children) per leaf (internal node) filled by load, leaving
+     *  slack so that later puts do not split every node at once.
+     */
+    private static final int FILL = 3 * ORDER / 4;
+
     /** The class for type K.
      */
     private final Class <K> classK;
@@ -185,6 +191,97 @@ public class BpTreeMap <K extends Comparable <K>, V>
         return enSet;
     } // entrySet
 
+    /********************************************************************************
+     * Return an iterator over the entries in key order, found by walking the linked
+     * leaf nodes from the first (leftmost) leaf.
+     * @return  the iterator over the entries in ascending key order
+     */
+    public Iterator <Map.Entry <K, V>> entryIterator ()
+    {
+        return new Iterator <Map.Entry <K, V>> () {
+            Node leaf = firstLeaf;                            // current leaf
+            int  i    = 0;                                    // position in current leaf
+
+            public boolean hasNext ()
+            {
+                while (leaf != null && i >= leaf.nKeys) {     // move on to the next leaf
+                    leaf = (Node) leaf.ref[leaf.nKeys];
+                    i    = 0;
+                } // while
+                return leaf != null;
+            } // hasNext
+
+            @SuppressWarnings("unchecked")
+            public Map.Entry <K, V> next ()
+            {
+                if (! hasNext ()) throw new NoSuchElementException ();
+                var e = new AbstractMap.SimpleEntry <K, V> (leaf.key[i], (V) leaf.ref[i]);
+                i++;
+                return e;
+            } // next
+        };
+    } // entryIterator
+
+    /********************************************************************************
+     * Return a spliterator over the values in key order, for parallel scans.  The leaf
+     * chain is walked once to collect the leaves; the spliterator then splits ranges
+     * of leaves in half until a range has no more than minLeaves leaves.
+     * @param minLeaves  the number of leaves below which a range is not split
+     * @return  the spliterator over the values in ascending key order
+     */
+    public Spliterator <V> valueSpliterator (int minLeaves)
+    {
+        var leaves = new ArrayList <Node> ();
+        for (var leaf = firstLeaf; leaf != null; leaf = (Node) leaf.ref[leaf.nKeys]) leaves.add (leaf);
+        return new LeafSpliterator (leaves, 0, leaves.size (), Math.max (1, minLeaves));
+    } // valueSpliterator
+
+    /********************************************************************************
+     * This inner class splits a range [lo, hi) of the leaves for a parallel scan.
+     */
+    private class LeafSpliterator
+            implements Spliterator <V>
+    {
+        final List <Node> leaves;                     // all the leaves in key order
+        int lo, hi;                                   // the range of leaves left
+        int i = 0;                                    // position in leaf lo
+        final int minLeaves;                          // smallest range to split
+
+        LeafSpliterator (List <Node> _leaves, int _lo, int _hi, int _minLeaves)
+        {
+            leaves = _leaves; lo = _lo; hi = _hi; minLeaves = _minLeaves;
+        } // constructor
+
+        @SuppressWarnings("unchecked")
+        public boolean tryAdvance (Consumer <? super V> action)
+        {
+            while (lo < hi && i >= leaves.get (lo).nKeys) { lo++; i = 0; }
+            if (lo >= hi) return false;
+            action.accept ((V) leaves.get (lo).ref[i++]);
+            return true;
+        } // tryAdvance
+
+        public Spliterator <V> trySplit ()
+        {
+            if (i > 0 || hi - lo <= minLeaves) return null;
+            var mid    = (lo + hi) >>> 1;
+            var prefix = new LeafSpliterator (leaves, lo, mid, minLeaves);
+            lo = mid;
+            return prefix;
+        } // trySplit
+
+        public long estimateSize ()
+        {
+            return (long) (hi - lo) * ORDER / 2;
+        } // estimateSize
+
+        public int characteristics ()
+        {
+            return ORDERED | NONNULL;
+        } // characteristics
+
+    } // LeafSpliterator class
+
     /********************************************************************************
      * Given the key, look up the value in the B+Tree map.
      * @param key  the key used for look up
@@ -196,6 +293,36 @@ public class BpTreeMap <K extends Comparable <K>, V>
         return find ((K) key, root);
     } // get
 
+    /********************************************************************************
+     * Look up many keys at once.  The keys are visited in ascending order, so the leaf
+     * holding the next key is usually the current leaf or the next one in the leaf
+     * chain; the tree is only descended from the root again to skip over several leaves.
+     * @param keys  the keys to look up, in ascending order
+     * @return  the value associated with each key (null if not found), in the same order
+     */
+    @SuppressWarnings("unchecked")
+    public List <V> getAll (List <K> keys)
+    {
+        var values = new ArrayList <V> (keys.size ());
+        Node leaf = null;
+        var i = 0;                                            // position in the current leaf
+        for (var k : keys) {
+            if (leaf == null || leaf.nKeys == 0 || k.compareTo (leaf.key[leaf.nKeys-1]) > 0) {
+                var next = (leaf == null) ? null : (Node) leaf.ref[leaf.nKeys];
+                if (next != null && next.nKeys > 0 && k.compareTo (next.key[next.nKeys-1]) <= 0) {
+                    count++;
+                    leaf = next;                              // in the next leaf: walk over to it
+                } else {
+                    leaf = findLeaf (k, root);                // further on: descend again
+                } // if
+                i = 0;
+            } // if
+            while (i < leaf.nKeys && k.compareTo (leaf.key[i]) > 0) i++;
+            values.add ((i < leaf.nKeys && k.compareTo (leaf.key[i]) == 0) ? (V) leaf.ref[i] : null);
+        } // for
+        return values;
+    } // getAll
+
     /********************************************************************************
      * Put the key-value pair in the B+Tree map.
      * @param key    the key to insert
@@ -208,6 +335,65 @@ public class BpTreeMap <K extends Comparable <K>, V>
         return null;
     } // put
 
+    /********************************************************************************
+     * Load an empty B+Tree map from key-value pairs given in ascending key order,
+     * building it bottom-up: the leaves are filled left to right and linked, then each
+     * level of internal nodes is made over the one below, with the largest key of each
+     * child as its divider.  This avoids descending from the root and splitting nodes
+     * for every pair, as put does.  Nodes are filled to about FILL, not to capacity.
+     * Of equal keys, only the first is kept.
+     * @param keys    the keys, in ascending order
+     * @param values  the values for the keys
+     */
+    @SuppressWarnings("unchecked")
+    public void load (List <K> keys, List <V> values)
+    {
+        if (keyCount > 0) throw new IllegalStateException ("BpTreeMap.load: the map is not empty");
+        var ks = new ArrayList <K> (keys.size ());
+        var vs = new ArrayList <Object> (keys.size ());
+        for (int i = 0; i < keys.size (); i++) {
+            if (i > 0 && keys.get (i).compareTo (keys.get (i-1)) == 0) continue;
+            ks.add (keys.get (i)); vs.add (values.get (i));
+        } // for
+        if (ks.isEmpty ()) return;
+        keyCount = ks.size ();
+
+        var level = new ArrayList <Node> ();                          // the leaves, then each level up
+        var max   = new ArrayList <K> ();                             // the largest key under each node
+        int nLeaves = (ks.size () + FILL - 1) / FILL;
+        for (int j = 0, from = 0; j < nLeaves; j++) {
+            var leaf = (j == 0) ? firstLeaf : new Node (ORDER, true);
+            int to   = (int) ((long) ks.size () * (j + 1) / nLeaves);   // spread the keys evenly
+            for (int i = from; i < to; i++) { leaf.key[i-from] = ks.get (i); leaf.ref[i-from] = vs.get (i); }
+            leaf.nKeys = to - from;
+            if (j > 0) { var prev = level.get (j-1); prev.ref[prev.nKeys] = leaf; }   // link the leaves
+            level.add (leaf);
+            max.add (ks.get (to-1));
+            from = to;
+        } // for
+
+        while (level.size () > 1) {
+            var up    = new ArrayList <Node> ();
+            var upMax = new ArrayList <K> ();
+            int nNodes = (level.size () + FILL - 1) / FILL;
+            for (int j = 0, from = 0; j < nNodes; j++) {
+                var n  = new Node (ORDER, false);
+                int to = (int) ((long) level.size () * (j + 1) / nNodes);
+                for (int i = from; i < to; i++) {
+                    n.ref[i-from] = level.get (i);
+                    if (i < to - 1) n.key[i-from] = max.get (i);      // the last child needs no divider
+                } // for
+                n.nKeys = to - from - 1;
+                up.add (n);
+                upMax.add (max.get (to-1));
+                from = to;
+            } // for
+            level = up;
+            max   = upMax;
+        } // while
+        root = level.get (0);
+    } // load
+
     /********************************************************************************
      * Return the first (smallest) key in the B+Tree map.
      * @return  the first key in the B+Tree map.
@@ -336,6 +522,22 @@ public class BpTreeMap <K extends Comparable <K>, V>
         } // if
     } // find
 
+    /********************************************************************************
+     * Helper function for finding the leaf where a key is or would be.
+     * @param key  the key to find
+     * @param n    the node to start from
+     * @return  the leaf
+     */
+    private Node findLeaf (K key, Node n)
+    {
+        count++;
+        while (! n.isLeaf) {
+            n = (Node) n.ref[n.find (key)];
+            count++;
+        } // while
+        return n;
+    } // findLeaf
+
     /********************************************************************************
      * Recursive helper function for inserting a key in B+trees.
      * @param key  the key to insert
@@ -355,14 +557,17 @@ public class BpTreeMap <K extends Comparable <K>, V>
         if (n.isLeaf) {                                                      // handle leaf node level
 
             if (n.nKeys < ORDER - 1) {                                       // current node is not full
-                wedge (key, ref, n, n.find (key), true);                     // wedge (key, ref) pair in at position i
+                if (wedge (key, ref, n, n.find (key), true)) keyCount++;     // wedge (key, ref) pair in at position i
             } else {                                                         // current node is full
                 rt = split (key, ref, n, true);                              // split current node, return right sibling
-                n.ref[n.nKeys] = rt;                                         // link leaf n to leaf rt
-                if (n == root && rt != null) {
-                    root = makeRoot (n, n.key[n.nKeys-1], rt);               // make a new root
-                } else if (rt != null) {
-                    hasSplit = true;                                         // indicate an unhandled split
+                if (rt != null) {                                            // null: duplicate key, n left as is
+                    keyCount++;
+                    n.ref[n.nKeys] = rt;                                     // link leaf n to leaf rt
+                    if (n == root) {
+                        root = makeRoot (n, n.key[n.nKeys-1], rt);           // make a new root
+                    } else {
+                        hasSplit = true;                                     // indicate an unhandled split
+                    } // if
                 } // if
             } // if
 
@@ -0,0 +1,74 @@
+package main;
+/*****************************************************************************************
+ * @file  Checkpointer.java
+ *
+ * @author   John Miller
+ */
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*****************************************************************************************
+ * The Checkpointer class periodically takes fuzzy checkpoints of logged tables on a
+ * background thread, bounding the log tail that recovery (Table.open) has to replay.
+ * Inserts continue while a checkpoint is being written.
+ */
+public class Checkpointer
+{
+    /** The tables to checkpoint
+     */
+    private final List <Table> tables = new CopyOnWriteArrayList <> ();
+
+    /** The background thread running the checkpoints
+     */
+    private final ScheduledExecutorService timer;
+
+    /*************************************************************************************
+     * Construct a checkpointer that checkpoints its tables every period milliseconds.
+     * @param period  the time between checkpoints in milliseconds
+     */
+    public Checkpointer (long period)
+    {
+        timer = Executors.newSingleThreadScheduledExecutor (r -> {
+            var t = new Thread (r, "checkpointer");
+            t.setDaemon (true);
+            return t;
+        });
+        timer.scheduleWithFixedDelay (this::checkpointAll, period, period, TimeUnit.MILLISECONDS);
+    } // constructor
+
+    /*************************************************************************************
+     * Add a table to be checkpointed.
+     * @param table  the (logged) table to checkpoint
+     */
+    public void add (Table table)
+    {
+        tables.add (table);
+    } // add
+
+    /*************************************************************************************
+     * Checkpoint all of the tables now.
+     */
+    public void checkpointAll ()
+    {
+        for (var table : tables) table.checkpoint ();
+    } // checkpointAll
+
+    /*************************************************************************************
+     * Stop taking checkpoints, after taking a final one.
+     */
+    public void stop ()
+    {
+        timer.shutdown ();
+        try {
+            timer.awaitTermination (1, TimeUnit.MINUTES);
+        } catch (InterruptedException ex) {
+            Thread.currentThread ().interrupt ();
+        } // try
+        checkpointAll ();
+    } // stop
+
+} // Checkpointer class
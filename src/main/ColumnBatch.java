@@ -0,0 +1,327 @@
+package main;
+/*****************************************************************************************
+ * @file  ColumnBatch.java
+ *
+ * @author   John Miller
+ */
+
+import java.util.List;
+import java.util.Set;
+
+/*****************************************************************************************
+ * The ColumnBatch class holds a batch of up to SIZE consecutive tuples of a table in
+ * columnar form, for vectorized (batch at a time) execution.  Only the columns a query
+ * needs are loaded: integer columns into long vectors, Double and Float columns into
+ * double vectors, and all others into Comparable vectors.  The selection vector lists
+ * the positions (within the batch) of the tuples that are still qualified; filters
+ * refine it in place with branch-free loops over primitive arrays.  Null values never
+ * satisfy a comparison.
+ */
+class ColumnBatch
+{
+    /** The maximum number of tuples in a batch
+     */
+    static final int SIZE = 1024;
+
+    /** Comparison operators for filters
+     */
+    static final int EQ = 0, NE = 1, LT = 2, LE = 3, GT = 4, GE = 5;
+
+    /** The names of the comparison operators, indexed by operator
+     */
+    static final String [] OPS = { "==", "!=", "<", "<=", ">", ">=" };
+
+    /** The long vector of each loaded integer column (else null)
+     */
+    final long [][] longs;
+
+    /** The double vector of each loaded real column (else null)
+     */
+    final double [][] doubles;
+
+    /** The value vector of each other loaded column (else null)
+     */
+    final Comparable [][] objects;
+
+    /** Whether each loaded column has a null in the current batch
+     */
+    final boolean [] hasNulls;
+
+    /** The null flags of each loaded column (valid when hasNulls)
+     */
+    final boolean [][] nulls;
+
+    /** The selection vector: positions of the qualified tuples, in order
+     */
+    final int [] sel = new int [SIZE];
+
+    /** The number of qualified tuples (the length of the selection vector)
+     */
+    int n;
+
+    /** The number of tuples in the batch
+     */
+    int rows;
+
+    /** The position of the batch's first tuple in the table
+     */
+    int start;
+
+    /*************************************************************************************
+     * Construct a batch holding the given columns.
+     * @param domain  the domains of all the table's columns
+     * @param cols    the positions of the columns to load
+     */
+    ColumnBatch (Class [] domain, int [] cols)
+    {
+        longs    = new long [domain.length][];
+        doubles  = new double [domain.length][];
+        objects  = new Comparable [domain.length][];
+        hasNulls = new boolean [domain.length];
+        nulls    = new boolean [domain.length][];
+        for (var j : cols) {
+            if (longs [j] != null || doubles [j] != null || objects [j] != null) continue;
+            if (EncodedColumn.isIntegral (domain [j]))                     longs [j]   = new long [SIZE];
+            else if (domain [j] == Double.class || domain [j] == Float.class) doubles [j] = new double [SIZE];
+            else                                                           objects [j] = new Comparable [SIZE];
+            nulls [j] = new boolean [SIZE];
+        } // for
+    } // constructor
+
+    /*************************************************************************************
+     * Load the tuples from the given position on into the batch (column by column),
+     * selecting all of them.
+     * @param tuples  the tuples of the table
+     * @param _start  the position of the first tuple to load
+     */
+    void load (List <Comparable []> tuples, int _start)
+    {
+        start = _start;
+        rows  = Math.min (SIZE, tuples.size () - start);
+        for (int j = 0; j < longs.length; j++) {
+            if (nulls [j] == null) continue;
+            var isNull = false;
+            if (longs [j] != null) {
+                var v = longs [j];
+                for (int i = 0; i < rows; i++) {
+                    var x = tuples.get (start + i) [j];
+                    if (x == null) { isNull = nulls [j][i] = true; v [i] = 0; }
+                    else           { nulls [j][i] = false; v [i] = ((Number) x).longValue (); }
+                } // for
+            } else if (doubles [j] != null) {
+                var v = doubles [j];
+                for (int i = 0; i < rows; i++) {
+                    var x = tuples.get (start + i) [j];
+                    if (x == null) { isNull = nulls [j][i] = true; v [i] = 0; }
+                    else           { nulls [j][i] = false; v [i] = ((Number) x).doubleValue (); }
+                } // for
+            } else {
+                var v = objects [j];
+                for (int i = 0; i < rows; i++) {
+                    v [i] = tuples.get (start + i) [j];
+                    isNull |= nulls [j][i] = (v [i] == null);
+                } // for
+            } // if
+            hasNulls [j] = isNull;
+        } // for
+        for (int i = 0; i < rows; i++) sel [i] = i;
+        n = rows;
+    } // load
+
+    /*************************************************************************************
+     * Keep the selected tuples whose integer column j compares to x by op.  The kernels
+     * are branch-free: every position is written to the selection vector and the count
+     * advances by the comparison result, so there are no mispredicted branches and the
+     * JIT compiles the comparison to a conditional move or set instruction.
+     * @param j   the column
+     * @param op  the comparison operator
+     * @param x   the value to compare with
+     */
+    void filter (int j, int op, long x)
+    {
+        var v = longs [j];
+        var m = 0;
+        switch (op) {
+        case EQ: for (int k = 0; k < n; k++) { var i = sel [k]; sel [m] = i; m += (v [i] == x) ? 1 : 0; } break;
+        case NE: for (int k = 0; k < n; k++) { var i = sel [k]; sel [m] = i; m += (v [i] != x) ? 1 : 0; } break;
+        case LT: for (int k = 0; k < n; k++) { var i = sel [k]; sel [m] = i; m += (v [i] <  x) ? 1 : 0; } break;
+        case LE: for (int k = 0; k < n; k++) { var i = sel [k]; sel [m] = i; m += (v [i] <= x) ? 1 : 0; } break;
+        case GT: for (int k = 0; k < n; k++) { var i = sel [k]; sel [m] = i; m += (v [i] >  x) ? 1 : 0; } break;
+        case GE: for (int k = 0; k < n; k++) { var i = sel [k]; sel [m] = i; m += (v [i] >= x) ? 1 : 0; } break;
+        } // switch
+        n = m;
+        dropNulls (j);
+    } // filter
+
+    /*************************************************************************************
+     * Keep the selected tuples whose integer column j is in [lo, hi], with a single
+     * unsigned comparison per value: v - lo (wrapping) is at most hi - lo exactly when
+     * lo <= v <= hi.
+     * @param j   the column
+     * @param lo  the lower bound (inclusive)
+     * @param hi  the upper bound (inclusive)
+     */
+    void between (int j, long lo, long hi)
+    {
+        if (lo > hi) { n = 0; return; }
+        var v = longs [j];
+        var w = (hi - lo) ^ Long.MIN_VALUE;
+        var m = 0;
+        for (int k = 0; k < n; k++) { var i = sel [k]; sel [m] = i; m += (((v [i] - lo) ^ Long.MIN_VALUE) <= w) ? 1 : 0; }
+        n = m;
+        dropNulls (j);
+    } // between
+
+    /*************************************************************************************
+     * Keep the selected tuples whose integer column j equals one of the (few) values
+     * xs, comparing each value with all of them without branching.
+     * @param j   the column
+     * @param xs  the values
+     */
+    void in (int j, long [] xs)
+    {
+        var v = longs [j];
+        var m = 0;
+        for (int k = 0; k < n; k++) {
+            var i = sel [k];
+            var hit = false;
+            for (var x : xs) hit |= v [i] == x;
+            sel [m] = i;
+            m += hit ? 1 : 0;
+        } // for
+        n = m;
+        dropNulls (j);
+    } // in
+
+    /*************************************************************************************
+     * Keep the selected tuples whose real column j compares to x by op (branch-free).
+     * @param j   the column
+     * @param op  the comparison operator
+     * @param x   the value to compare with
+     */
+    void filter (int j, int op, double x)
+    {
+        var v = doubles [j];
+        var m = 0;
+        switch (op) {
+        case EQ: for (int k = 0; k < n; k++) { var i = sel [k]; sel [m] = i; m += (v [i] == x) ? 1 : 0; } break;
+        case NE: for (int k = 0; k < n; k++) { var i = sel [k]; sel [m] = i; m += (v [i] != x) ? 1 : 0; } break;
+        case LT: for (int k = 0; k < n; k++) { var i = sel [k]; sel [m] = i; m += (v [i] <  x) ? 1 : 0; } break;
+        case LE: for (int k = 0; k < n; k++) { var i = sel [k]; sel [m] = i; m += (v [i] <= x) ? 1 : 0; } break;
+        case GT: for (int k = 0; k < n; k++) { var i = sel [k]; sel [m] = i; m += (v [i] >  x) ? 1 : 0; } break;
+        case GE: for (int k = 0; k < n; k++) { var i = sel [k]; sel [m] = i; m += (v [i] >= x) ? 1 : 0; } break;
+        } // switch
+        n = m;
+        dropNulls (j);
+    } // filter
+
+    /*************************************************************************************
+     * Keep the selected tuples whose real column j is in [lo, hi] (branch-free).
+     * @param j   the column
+     * @param lo  the lower bound (inclusive)
+     * @param hi  the upper bound (inclusive)
+     */
+    void between (int j, double lo, double hi)
+    {
+        var v = doubles [j];
+        var m = 0;
+        for (int k = 0; k < n; k++) { var i = sel [k]; sel [m] = i; m += (v [i] >= lo & v [i] <= hi) ? 1 : 0; }
+        n = m;
+        dropNulls (j);
+    } // between
+
+    /*************************************************************************************
+     * Keep the selected tuples whose (non-primitive) column j compares to x by op.
+     * @param j   the column
+     * @param op  the comparison operator
+     * @param x   the value to compare with
+     */
+    @SuppressWarnings("unchecked")
+    void filter (int j, int op, Comparable x)
+    {
+        var v = objects [j];
+        var m = 0;
+        for (int k = 0; k < n; k++) {
+            var i = sel [k];
+            if (v [i] == null) continue;
+            var c = v [i].compareTo (x);
+            boolean keep;
+            switch (op) {
+            case EQ: keep = c == 0; break;
+            case NE: keep = c != 0; break;
+            case LT: keep = c <  0; break;
+            case LE: keep = c <= 0; break;
+            case GT: keep = c >  0; break;
+            default: keep = c >= 0;
+            } // switch
+            if (keep) sel [m++] = i;
+        } // for
+        n = m;
+    } // filter
+
+    /*************************************************************************************
+     * Keep the selected tuples whose (non-primitive) column j holds one of the values.
+     * @param j   the column
+     * @param xs  the values
+     */
+    void in (int j, Set <Comparable> xs)
+    {
+        var v = objects [j];
+        var m = 0;
+        for (int k = 0; k < n; k++) { var i = sel [k]; if (v [i] != null && xs.contains (v [i])) sel [m++] = i; }
+        n = m;
+    } // in
+
+    /*************************************************************************************
+     * Return the sum of integer column j over the selected tuples (nulls count as 0).
+     * @param j  the column
+     * @return  the sum
+     */
+    long sumLong (int j)
+    {
+        var v = longs [j];
+        var s = 0L;
+        for (int k = 0; k < n; k++) s += v [sel [k]];
+        return s;
+    } // sumLong
+
+    /*************************************************************************************
+     * Return the sum of real column j over the selected tuples (nulls count as 0).
+     * @param j  the column
+     * @return  the sum
+     */
+    double sumDouble (int j)
+    {
+        var v = doubles [j];
+        var s = 0.0;
+        for (int k = 0; k < n; k++) s += v [sel [k]];
+        return s;
+    } // sumDouble
+
+    /*************************************************************************************
+     * Return the number of selected tuples with a non-null value in column j.
+     * @param j  the column
+     * @return  the number of non-null values
+     */
+    int countNonNull (int j)
+    {
+        if (! hasNulls [j]) return n;
+        var c = 0;
+        for (int k = 0; k < n; k++) if (! nulls [j][sel [k]]) c++;
+        return c;
+    } // countNonNull
+
+    /*************************************************************************************
+     * Drop the selected tuples with a null in column j (their primitive value is a
+     * placeholder that may have satisfied the comparison).
+     * @param j  the column
+     */
+    private void dropNulls (int j)
+    {
+        if (! hasNulls [j]) return;
+        var m = 0;
+        for (int k = 0; k < n; k++) if (! nulls [j][sel [k]]) sel [m++] = sel [k];
+        n = m;
+    } // dropNulls
+
+} // ColumnBatch class
@@ -0,0 +1,84 @@
+package main;
+/*****************************************************************************************
+ * @file  ColumnDictionary.java
+ *
+ * @author   John Miller
+ */
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/*****************************************************************************************
+ * The ColumnDictionary class maps the distinct values of a column to dense int codes
+ * (0, 1, 2, ...) in order of first appearance, and back.  It is used to dictionary
+ * encode columns and to keep a single shared instance of each repeated value.
+ */
+class ColumnDictionary
+      implements Serializable
+{
+    /** Map from value to code
+     */
+    private final HashMap <Comparable, Integer> codes = new HashMap <> ();
+
+    /** The values, indexed by code
+     */
+    private final ArrayList <Comparable> values = new ArrayList <> ();
+
+    /*************************************************************************************
+     * Return the code for value v, adding v to the dictionary if it is new.
+     * @param v  the value to encode
+     * @return  the code for v
+     */
+    int encode (Comparable v)
+    {
+        var c = codes.get (v);
+        if (c == null) {
+            c = values.size ();
+            codes.put (v, c);
+            values.add (v);
+        } // if
+        return c;
+    } // encode
+
+    /*************************************************************************************
+     * Return the code for value v, or -1 if v is not in the dictionary.
+     * @param v  the value to look up
+     * @return  the code for v or -1
+     */
+    int code (Comparable v)
+    {
+        var c = codes.get (v);
+        return (c == null) ? -1 : c;
+    } // code
+
+    /*************************************************************************************
+     * Return the value for the given code.
+     * @param c  the code to decode
+     * @return  the value with code c
+     */
+    Comparable decode (int c)
+    {
+        return values.get (c);
+    } // decode
+
+    /*************************************************************************************
+     * Return the shared instance of value v, adding v to the dictionary if it is new.
+     * @param v  the value
+     * @return  the dictionary's instance equal to v
+     */
+    Comparable canonical (Comparable v)
+    {
+        return values.get (encode (v));
+    } // canonical
+
+    /*************************************************************************************
+     * Return the number of distinct values in the dictionary.
+     * @return  the size of the dictionary
+     */
+    int size ()
+    {
+        return values.size ();
+    } // size
+
+} // ColumnDictionary class
@@ -0,0 +1,288 @@
+package main;
+/*****************************************************************************************
+ * @file  ColumnStats.java
+ *
+ * @author   John Miller
+ */
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/*****************************************************************************************
+ * The ColumnStats class keeps the statistics of one column of a table used to estimate
+ * the selectivity of predicates: the number of rows and nulls, the minimum and maximum,
+ * a HyperLogLog sketch of the number of distinct values and an equi-depth histogram.
+ * The histogram is built by analyze (each bucket then holds about the same number of
+ * values); later inserts update its bucket counts and extend its last bucket, and all
+ * the other statistics are kept exact (the sketch approximately) on every insert.
+ */
+public class ColumnStats
+       implements Serializable
+{
+    /** The number of histogram buckets
+     */
+    private static final int BUCKETS = 32;
+
+    /** The number of rows and of null values
+     */
+    private long rows = 0, nulls = 0;
+
+    /** The smallest and largest value (null when there are none)
+     */
+    private Comparable min, max;
+
+    /** The sketch of the distinct values
+     */
+    private final HyperLogLog sketch;
+
+    /** The upper bound (inclusive) of each histogram bucket, ascending
+     */
+    private final Comparable [] bounds;
+
+    /** The number of values in each histogram bucket
+     */
+    private final long [] counts;
+
+    /*************************************************************************************
+     * Compute the statistics of column j of the tuples (analyze).
+     * @param tuples  the tuples of the table
+     * @param j       the column
+     */
+    @SuppressWarnings("unchecked")
+    ColumnStats (List <Comparable []> tuples, int j)
+    {
+        sketch = new HyperLogLog ();
+        var values = new ArrayList <Comparable> (tuples.size ());
+        for (var t : tuples) {
+            rows++;
+            if (t [j] == null) nulls++;
+            else { values.add (t [j]); sketch.add (t [j]); }
+        } // for
+        Collections.sort (values);
+
+        var n = values.size ();
+        var b = Math.min (BUCKETS, n);
+        bounds = new Comparable [b];
+        counts = new long [b];
+        for (int k = 0, prev = 0; k < b; k++) {                       // bucket k ends at quantile (k + 1) / b
+            var end = (int) ((long) n * (k + 1) / b);
+            bounds [k] = values.get (end - 1);
+            counts [k] = end - prev;
+            prev = end;
+        } // for
+        if (n > 0) { min = values.get (0); max = values.get (n - 1); }
+    } // constructor
+
+    /*************************************************************************************
+     * Construct a copy of the given statistics (e.g., for a checkpoint snapshot).
+     * @param s  the statistics to copy
+     */
+    ColumnStats (ColumnStats s)
+    {
+        rows   = s.rows;
+        nulls  = s.nulls;
+        min    = s.min;
+        max    = s.max;
+        sketch = new HyperLogLog (s.sketch);
+        bounds = s.bounds.clone ();
+        counts = s.counts.clone ();
+    } // constructor
+
+    /*************************************************************************************
+     * Update the statistics for a value inserted into the column.
+     * @param v  the value inserted
+     */
+    @SuppressWarnings("unchecked")
+    void add (Comparable v)
+    {
+        rows++;
+        if (v == null) { nulls++; return; }
+        sketch.add (v);
+        if (min == null || v.compareTo (min) < 0) min = v;
+        if (max == null || v.compareTo (max) > 0) max = v;
+        if (bounds.length == 0) return;
+
+        var k = bucket (v);
+        if (k == bounds.length) bounds [--k] = v;                     // beyond the last bucket: extend it
+        counts [k]++;
+    } // add
+
+    /*************************************************************************************
+     * Return the number of rows.
+     * @return  the number of rows
+     */
+    public long rows ()
+    {
+        return rows;
+    } // rows
+
+    /*************************************************************************************
+     * Return the number of null values.
+     * @return  the number of nulls
+     */
+    public long nulls ()
+    {
+        return nulls;
+    } // nulls
+
+    /*************************************************************************************
+     * Return the smallest value.
+     * @return  the minimum (null if there are no values)
+     */
+    public Comparable min ()
+    {
+        return min;
+    } // min
+
+    /*************************************************************************************
+     * Return the largest value.
+     * @return  the maximum (null if there are no values)
+     */
+    public Comparable max ()
+    {
+        return max;
+    } // max
+
+    /*************************************************************************************
+     * Return the estimated number of distinct (non-null) values.
+     * @return  the estimated distinct count (at least 1)
+     */
+    public double distinct ()
+    {
+        return Math.max (1, Math.min (sketch.estimate (), rows - nulls));
+    } // distinct
+
+    /*************************************************************************************
+     * Estimate the fraction of the rows whose value compares to v by op, where op is one
+     * of ==, !=, <, <=, >, >=.
+     * @param op  the comparison operator
+     * @param v   the value compared with
+     * @return  the estimated selectivity
+     */
+    public double selectivity (String op, Comparable v)
+    {
+        var o = Arrays.asList (ColumnBatch.OPS).indexOf (op);
+        if (o < 0) throw new IllegalArgumentException ("ColumnStats: unknown operator " + op);
+        return selectivity (o, v);
+    } // selectivity
+
+    /*************************************************************************************
+     * Estimate the fraction of the rows whose value compares to v by op.  Equality uses
+     * the distinct count, and the histogram for frequent values; ranges use the
+     * histogram, interpolating inside a bucket for numbers.
+     * @param op  the comparison operator (see ColumnBatch)
+     * @param v   the value compared with
+     * @return  the estimated selectivity
+     */
+    @SuppressWarnings("unchecked")
+    double selectivity (int op, Comparable v)
+    {
+        var values = rows - nulls;
+        if (values == 0 || v == null) return 0;
+        var nonNull = (double) values / rows;
+        var inRange = v.compareTo (min) >= 0 && v.compareTo (max) <= 0;
+
+        var eq = inRange ? equal (v) : 0.0;
+        var below = below (v);
+        switch (op) {
+        case ColumnBatch.EQ: return nonNull * eq;
+        case ColumnBatch.NE: return nonNull * (1 - eq);
+        case ColumnBatch.LT: return nonNull * below;
+        case ColumnBatch.LE: return nonNull * Math.min (1, below + eq);
+        case ColumnBatch.GT: return nonNull * Math.max (0, 1 - below - eq);
+        default:             return nonNull * (1 - below);
+        } // switch
+    } // selectivity
+
+    /*************************************************************************************
+     * Estimate the fraction of the (non-null) values equal to v.  A frequent value is the
+     * upper bound of k >= 2 consecutive buckets and has a share of about k / BUCKETS;
+     * the other values share the rest evenly.
+     * @param v  the value (between min and max)
+     * @return  the estimated fraction equal to v
+     */
+    @SuppressWarnings("unchecked")
+    private double equal (Comparable v)
+    {
+        var frequent = 0;                                                // number of frequent values
+        var share    = 0.0;                                              // and their total share
+        for (int k = 0, run; k < bounds.length; k += run) {
+            for (run = 1; k + run < bounds.length && bounds [k + run].compareTo (bounds [k]) == 0; run++) ;
+            if (run < 2) continue;
+            if (bounds [k].compareTo (v) == 0) return (double) run / bounds.length;
+            frequent++;
+            share += (double) run / bounds.length;
+        } // for
+        return Math.max (0, 1 - share) / Math.max (1, distinct () - frequent);
+    } // equal
+
+    /*************************************************************************************
+     * Estimate the fraction of the (non-null) values less than v.
+     * @param v  the value
+     * @return  the estimated fraction below v
+     */
+    @SuppressWarnings("unchecked")
+    private double below (Comparable v)
+    {
+        if (v.compareTo (min) <= 0) return 0;
+        if (v.compareTo (max) > 0) return 1;
+        if (bounds.length == 0) return interpolate (min, max, v, 1.0 / 3.0);
+
+        var total = 0L;
+        for (var c : counts) total += c;
+        var k = bucket (v);
+        if (k == bounds.length) return 1;
+        var lessThan = 0L;
+        for (int i = 0; i < k; i++) lessThan += counts [i];
+        var lo = (k == 0) ? min : bounds [k - 1];
+        return (lessThan + counts [k] * interpolate (lo, bounds [k], v, 0.5)) / total;
+    } // below
+
+    /*************************************************************************************
+     * Return the histogram bucket that value v falls in: the first whose upper bound is
+     * at least v (bounds.length if v is above them all).
+     * @param v  the value
+     * @return  the bucket
+     */
+    @SuppressWarnings("unchecked")
+    private int bucket (Comparable v)
+    {
+        int lo = 0, hi = bounds.length;
+        while (lo < hi) {
+            var mid = (lo + hi) >>> 1;
+            if (bounds [mid].compareTo (v) < 0) lo = mid + 1; else hi = mid;
+        } // while
+        return lo;
+    } // bucket
+
+    /*************************************************************************************
+     * Return where v lies between lo and hi as a fraction, for numbers, else the default.
+     * @param lo   the low end
+     * @param hi   the high end
+     * @param v    the value
+     * @param dflt  the fraction to use for non-numbers
+     * @return  the fraction of the way from lo to hi
+     */
+    private static double interpolate (Comparable lo, Comparable hi, Comparable v, double dflt)
+    {
+        if (! (lo instanceof Number && hi instanceof Number && v instanceof Number)) return dflt;
+        var l = ((Number) lo).doubleValue ();
+        var h = ((Number) hi).doubleValue ();
+        if (h <= l) return dflt;
+        return Math.max (0, Math.min (1, (((Number) v).doubleValue () - l) / (h - l)));
+    } // interpolate
+
+    /*************************************************************************************
+     * Return the statistics as a string.
+     * @return  the statistics
+     */
+    public String toString ()
+    {
+        return "rows = " + rows + ", nulls = " + nulls + ", min = " + min + ", max = " + max
+             + ", distinct ~ " + Math.round (distinct ()) + ", buckets = " + bounds.length;
+    } // toString
+
+} // ColumnStats class
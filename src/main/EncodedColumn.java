@@ -0,0 +1,226 @@
+package main;
+/*****************************************************************************************
+ * @file  EncodedColumn.java
+ *
+ * @author   John Miller
+ */
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/*****************************************************************************************
+ * The EncodedColumn class provides a compressed, read-only copy of one column of a table.
+ * Each value is replaced by an int code:
+ * <ul>
+ *   <li> integer columns with a small range of values use frame-of-reference codes
+ *        (value - min), and
+ *   <li> all other columns use dictionary codes (see ColumnDictionary).
+ * </ul>
+ * The codes are stored run-length encoded when the column is sorted or clustered (few
+ * runs), and bit-packed otherwise.  Equality selection works directly on the codes: the
+ * value is looked up once and then only ints are compared (or whole runs skipped).
+ */
+public class EncodedColumn
+       implements Serializable
+{
+    /** The largest range of an integer column that uses frame-of-reference codes
+     */
+    private static final long MAX_RANGE = 1L << 24;
+
+    /** The domain (type) of the column's values
+     */
+    private final Class <?> domain;
+
+    /** The dictionary (null for frame-of-reference codes)
+     */
+    private final ColumnDictionary dict;
+
+    /** The base value for frame-of-reference codes
+     */
+    private final long base;
+
+    /** The codes when bit-packed (else null)
+     */
+    private final BitPackedInts packed;
+
+    /** The codes when run-length encoded (else null)
+     */
+    private final RunLengthInts runs;
+
+    /** The number of values in the column
+     */
+    private final int size;
+
+    /*************************************************************************************
+     * Encode the given column values.
+     * @param _domain  the domain of the column
+     * @param values   the values of the column, in tuple order
+     */
+    public EncodedColumn (Class <?> _domain, Comparable [] values)
+    {
+        domain = _domain;
+        size   = values.length;
+        var codes = new int [size];
+
+        var min = Long.MAX_VALUE;
+        var max = Long.MIN_VALUE;
+        var integral = isIntegral (domain);
+        for (var i = 0; integral && i < size; i++) {
+            if (values [i] == null) { integral = false; break; }
+            var v = ((Number) values [i]).longValue ();
+            min = Math.min (min, v);
+            max = Math.max (max, v);
+        } // for
+
+        if (integral && size > 0 && Long.compareUnsigned (max - min, MAX_RANGE) < 0) {   // frame-of-reference
+                                                            // unsigned: max - min may exceed Long.MAX_VALUE
+            dict = null;
+            base = min;
+            for (int i = 0; i < size; i++) codes [i] = (int) (((Number) values [i]).longValue () - base);
+        } else {                                                         // dictionary
+            dict = new ColumnDictionary ();
+            base = 0;
+            for (int i = 0; i < size; i++) codes [i] = dict.encode (values [i]);
+        } // if
+
+        var maxCode = 0;
+        for (var c : codes) maxCode = Math.max (maxCode, c);
+        if (RunLengthInts.countRuns (codes) * 4 <= size) {
+            runs   = new RunLengthInts (codes);
+            packed = null;
+        } else {
+            runs   = null;
+            packed = new BitPackedInts (codes, BitPackedInts.bitsFor (maxCode));
+        } // if
+    } // constructor
+
+    /*************************************************************************************
+     * Return the number of values in the column.
+     * @return  the size of the column
+     */
+    public int size ()
+    {
+        return size;
+    } // size
+
+    /*************************************************************************************
+     * Return the code of the i-th value.
+     * @param i  the position in the column
+     * @return  the code at position i
+     */
+    public int code (int i)
+    {
+        return (runs != null) ? runs.get (i) : packed.get (i);
+    } // code
+
+    /*************************************************************************************
+     * Return the code for value v, or -1 if no value in the column equals v.
+     * @param v  the value to look up
+     * @return  the code for v or -1
+     */
+    public int codeOf (Comparable v)
+    {
+        if (dict != null) return dict.code (v);
+        if (v == null || v.getClass () != domain) return -1;
+        var x = ((Number) v).longValue ();
+        if (x < base) return -1;
+        var c = x - base;                                                // exact as an unsigned long
+        return (Long.compareUnsigned (c, MAX_RANGE) >= 0) ? -1 : (int) c;
+    } // codeOf
+
+    /*************************************************************************************
+     * Return the value for the given code.
+     * @param c  the code
+     * @return  the value with code c
+     */
+    public Comparable decode (int c)
+    {
+        if (dict != null) return dict.decode (c);
+        var v = base + c;
+        if (domain == Integer.class) return (int) v;
+        if (domain == Short.class)   return (short) v;
+        if (domain == Byte.class)    return (byte) v;
+        return v;
+    } // decode
+
+    /*************************************************************************************
+     * Return the i-th value of the column.
+     * @param i  the position in the column
+     * @return  the value at position i
+     */
+    public Comparable get (int i)
+    {
+        return decode (code (i));
+    } // get
+
+    /*************************************************************************************
+     * Return the positions of the values equal to v, comparing codes only.
+     * @param v  the value to select
+     * @return  the positions (tuple numbers) of the matching values, in order
+     */
+    public int [] select (Comparable v)
+    {
+        var c = codeOf (v);
+        if (c < 0) return new int [0];
+
+        var pos = new int [16];
+        var n   = 0;
+        if (runs != null) {
+            for (int r = 0; r < runs.runs (); r++) {
+                if (runs.runValue (r) != c) continue;                     // skip the whole run
+                for (int i = runs.runStart (r); i < runs.runEnd (r); i++) {
+                    if (n == pos.length) pos = Arrays.copyOf (pos, 2 * n);
+                    pos [n++] = i;
+                } // for
+            } // for
+        } else {
+            for (int i = 0; i < size; i++) {
+                if (packed.get (i) == c) {
+                    if (n == pos.length) pos = Arrays.copyOf (pos, 2 * n);
+                    pos [n++] = i;
+                } // if
+            } // for
+        } // if
+        return Arrays.copyOf (pos, n);
+    } // select
+
+    /*************************************************************************************
+     * Return the number of distinct codes (the dictionary size), or -1 for
+     * frame-of-reference codes.
+     * @return  the dictionary size or -1
+     */
+    public int cardinality ()
+    {
+        return (dict != null) ? dict.size () : -1;
+    } // cardinality
+
+    /*************************************************************************************
+     * Return whether the codes are run-length encoded.
+     * @return  whether the column is stored as runs
+     */
+    public boolean isRunLength ()
+    {
+        return runs != null;
+    } // isRunLength
+
+    /*************************************************************************************
+     * Return the approximate number of bytes used by the encoded codes (not counting the
+     * dictionary values).
+     * @return  the memory size in bytes
+     */
+    public long memorySize ()
+    {
+        return (runs != null) ? runs.memorySize () : packed.memorySize ();
+    } // memorySize
+
+    /*************************************************************************************
+     * Determine whether the domain is an integer type that fits in a long.
+     * @param c  the domain
+     * @return  whether c is Long, Integer, Short or Byte
+     */
+    static boolean isIntegral (Class <?> c)
+    {
+        return c == Integer.class || c == Long.class || c == Short.class || c == Byte.class;
+    } // isIntegral
+
+} // EncodedColumn class
@@ -0,0 +1,280 @@
+package main;
+/*****************************************************************************************
+ * @file  HashAggregator.java
+ *
+ * @author   John Miller
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*****************************************************************************************
+ * The HashAggregator class computes grouped aggregates (count, sum, avg, min, max) over a
+ * stream of tuples.  Groups are found with an open-addressing (linear probing) hash table
+ * keyed on the group columns, and each group is given a dense group number that indexes
+ * primitive accumulator arrays (long counts, long or double sums).  Partial aggregators
+ * built by different threads over different tuples can be merged.
+ */
+class HashAggregator
+{
+    /** The aggregate functions
+     */
+    static final int COUNT = 0, SUM = 1, AVG = 2, MIN = 3, MAX = 4;
+
+    /** The names of the aggregate functions, indexed by function
+     */
+    static final String [] FUNCTIONS = { "count", "sum", "avg", "min", "max" };
+
+    /** The column positions of the group attributes
+     */
+    private final int [] groupCols;
+
+    /** The aggregate function of each aggregate
+     */
+    private final int [] fn;
+
+    /** The column position of each aggregate's attribute (-1 for count (*))
+     */
+    private final int [] aggCols;
+
+    /** Whether each aggregate's attribute is an integer type (summed exactly in a long)
+     */
+    private final boolean [] integral;
+
+    /** The hash table: group number + 1 for each slot, 0 for an empty slot
+     */
+    private int [] slots = new int [64];
+
+    /** The hash code of each group
+     */
+    private int [] hashes = new int [32];
+
+    /** The group attribute values of each group
+     */
+    private Comparable [][] groups = new Comparable [32][];
+
+    /** The number of non-null values per aggregate and group
+     */
+    private long [][] count;
+
+    /** The integer sums per aggregate and group
+     */
+    private long [][] lsum;
+
+    /** The real sums per aggregate and group
+     */
+    private double [][] dsum;
+
+    /** The minimum or maximum per aggregate and group
+     */
+    private Comparable [][] extreme;
+
+    /** The number of groups
+     */
+    private int nGroups = 0;
+
+    /*************************************************************************************
+     * Construct an empty aggregator.
+     * @param _groupCols  the column positions of the group attributes
+     * @param _fn         the aggregate function of each aggregate
+     * @param _aggCols    the column position of each aggregate's attribute (-1 for *)
+     * @param _integral   whether each aggregate's attribute is an integer type
+     */
+    HashAggregator (int [] _groupCols, int [] _fn, int [] _aggCols, boolean [] _integral)
+    {
+        groupCols = _groupCols;
+        fn        = _fn;
+        aggCols   = _aggCols;
+        integral  = _integral;
+        count     = new long [fn.length][32];
+        lsum      = new long [fn.length][32];
+        dsum      = new double [fn.length][32];
+        extreme   = new Comparable [fn.length][32];
+    } // constructor
+
+    /*************************************************************************************
+     * Construct an empty aggregator with the same group and aggregate columns as a.
+     * @param a  the aggregator to copy the specification from
+     */
+    HashAggregator (HashAggregator a)
+    {
+        this (a.groupCols, a.fn, a.aggCols, a.integral);
+    } // constructor
+
+    /*************************************************************************************
+     * Add a tuple to its group's accumulators.
+     * @param t  the tuple
+     */
+    @SuppressWarnings("unchecked")
+    void add (Comparable [] t)
+    {
+        var g = group (t, groupCols);
+        for (int a = 0; a < fn.length; a++) {
+            if (aggCols [a] < 0) { count [a][g]++; continue; }       // count (*)
+            var v = t [aggCols [a]];
+            if (v == null) continue;
+            count [a][g]++;
+            switch (fn [a]) {
+            case SUM: case AVG:
+                if (integral [a]) lsum [a][g] += ((Number) v).longValue ();
+                else              dsum [a][g] += ((Number) v).doubleValue ();
+                break;
+            case MIN:
+                if (extreme [a][g] == null || v.compareTo (extreme [a][g]) < 0) extreme [a][g] = v;
+                break;
+            case MAX:
+                if (extreme [a][g] == null || v.compareTo (extreme [a][g]) > 0) extreme [a][g] = v;
+                break;
+            } // switch
+        } // for
+    } // add
+
+    /*************************************************************************************
+     * Merge the accumulators of another (partial) aggregator into this one.
+     * @param other  the aggregator to merge in
+     */
+    @SuppressWarnings("unchecked")
+    void merge (HashAggregator other)
+    {
+        var all = new int [groupCols.length];
+        for (int j = 0; j < all.length; j++) all [j] = j;              // groups hold just the group values
+
+        for (int h = 0; h < other.nGroups; h++) {
+            var g = group (other.groups [h], all);
+            for (int a = 0; a < fn.length; a++) {
+                count [a][g] += other.count [a][h];
+                lsum [a][g]  += other.lsum [a][h];
+                dsum [a][g]  += other.dsum [a][h];
+                var v = other.extreme [a][h];
+                if (v == null) continue;
+                if (extreme [a][g] == null
+                    || (fn [a] == MIN && v.compareTo (extreme [a][g]) < 0)
+                    || (fn [a] == MAX && v.compareTo (extreme [a][g]) > 0)) extreme [a][g] = v;
+            } // for
+        } // for
+    } // merge
+
+    /*************************************************************************************
+     * Return one result tuple per group: the group values followed by the aggregates.
+     * Counts are Long, sums are Long (integer attributes) or Double, averages are Double,
+     * and minima and maxima have the attribute's domain.  Without group attributes there
+     * is always one group, even over no tuples (e.g., count (*) = 0), as in SQL.  Sums,
+     * averages, minima and maxima over no (non-null) values are null.
+     * @return  the result tuples
+     */
+    List <Comparable []> result ()
+    {
+        if (nGroups == 0 && groupCols.length == 0) group (new Comparable [0], groupCols);   // the empty group
+        List <Comparable []> rows = new ArrayList <> (nGroups);
+        for (int g = 0; g < nGroups; g++) {
+            var row = Arrays.copyOf (groups [g], groupCols.length + fn.length);
+            for (int a = 0; a < fn.length; a++) {
+                var n = count [a][g];
+                var sum = integral [a] ? (double) lsum [a][g] : dsum [a][g];
+                switch (fn [a]) {
+                case COUNT: row [groupCols.length + a] = n; break;
+                case SUM:   row [groupCols.length + a] = (n == 0) ? null
+                                                     : integral [a] ? (Comparable) lsum [a][g] : (Comparable) dsum [a][g]; break;
+                case AVG:   row [groupCols.length + a] = (n == 0) ? null : sum / n; break;
+                default:    row [groupCols.length + a] = extreme [a][g];
+                } // switch
+            } // for
+            rows.add (row);
+        } // for
+        return rows;
+    } // result
+
+    /*************************************************************************************
+     * Return the number of groups.
+     * @return  the number of groups
+     */
+    int size ()
+    {
+        return nGroups;
+    } // size
+
+    /*************************************************************************************
+     * Find the group number for the values at the given positions of tuple t, adding a
+     * new group if needed.
+     * @param t     the tuple
+     * @param cols  the positions of the group values in t
+     * @return  the group number
+     */
+    private int group (Comparable [] t, int [] cols)
+    {
+        var h = 1;
+        for (var c : cols) h = 31 * h + (t [c] == null ? 0 : t [c].hashCode ());
+        h ^= h >>> 16;
+
+        var mask = slots.length - 1;
+        for (int s = h & mask; ; s = (s + 1) & mask) {                 // linear probing
+            var g = slots [s] - 1;
+            if (g < 0) {                                               // empty slot: new group
+                g = newGroup (t, cols, h);
+                slots [s] = g + 1;
+                if (2 * nGroups > slots.length) rehash ();
+                return g;
+            } // if
+            if (hashes [g] == h && sameGroup (groups [g], t, cols)) return g;
+        } // for
+    } // group
+
+    /*************************************************************************************
+     * Add a new group, growing the accumulator arrays if needed.
+     * @param t     the tuple
+     * @param cols  the positions of the group values in t
+     * @param h     the hash code of the group values
+     * @return  the new group number
+     */
+    private int newGroup (Comparable [] t, int [] cols, int h)
+    {
+        if (nGroups == groups.length) {
+            var cap = 2 * nGroups;
+            hashes = Arrays.copyOf (hashes, cap);
+            groups = Arrays.copyOf (groups, cap);
+            for (int a = 0; a < fn.length; a++) {
+                count [a]   = Arrays.copyOf (count [a], cap);
+                lsum [a]    = Arrays.copyOf (lsum [a], cap);
+                dsum [a]    = Arrays.copyOf (dsum [a], cap);
+                extreme [a] = Arrays.copyOf (extreme [a], cap);
+            } // for
+        } // if
+        var key = new Comparable [cols.length];
+        for (int j = 0; j < cols.length; j++) key [j] = t [cols [j]];
+        hashes [nGroups] = h;
+        groups [nGroups] = key;
+        return nGroups++;
+    } // newGroup
+
+    /*************************************************************************************
+     * Double the size of the hash table and reinsert the groups.
+     */
+    private void rehash ()
+    {
+        slots = new int [2 * slots.length];
+        var mask = slots.length - 1;
+        for (int g = 0; g < nGroups; g++) {
+            var s = hashes [g] & mask;
+            while (slots [s] != 0) s = (s + 1) & mask;
+            slots [s] = g + 1;
+        } // for
+    } // rehash
+
+    /*************************************************************************************
+     * Determine whether the group values equal the values at the given positions of t.
+     * @param key   the group values
+     * @param t     the tuple
+     * @param cols  the positions of the group values in t
+     * @return  whether they are equal
+     */
+    private static boolean sameGroup (Comparable [] key, Comparable [] t, int [] cols)
+    {
+        for (int j = 0; j < cols.length; j++) {
+            var v = t [cols [j]];
+            if (v == null ? key [j] != null : ! v.equals (key [j])) return false;
+        } // for
+        return true;
+    } // sameGroup
+
+} // HashAggregator class
@@ -0,0 +1,79 @@
+package main;
+/*****************************************************************************************
+ * @file  HyperLogLog.java
+ *
+ * @author   John Miller
+ */
+
+import java.io.Serializable;
+
+/*****************************************************************************************
+ * The HyperLogLog class estimates the number of distinct values added to it in a fixed
+ * 4 KB, with a standard error of about 1.6%.  Each value's hash selects one of M
+ * registers, which keeps the largest number of leading zeros (plus one) seen in the
+ * rest of the hash; the harmonic mean of the registers gives the estimate, with linear
+ * counting used for small cardinalities.  Adding a value costs one hash.
+ */
+class HyperLogLog
+      implements Serializable
+{
+    /** The number of hash bits selecting the register
+     */
+    private static final int P = 12;
+
+    /** The number of registers
+     */
+    private static final int M = 1 << P;
+
+    /** The registers
+     */
+    private final byte [] reg;
+
+    /*************************************************************************************
+     * Construct an empty sketch.
+     */
+    HyperLogLog ()
+    {
+        reg = new byte [M];
+    } // constructor
+
+    /*************************************************************************************
+     * Construct a copy of the given sketch.
+     * @param h  the sketch to copy
+     */
+    HyperLogLog (HyperLogLog h)
+    {
+        reg = h.reg.clone ();
+    } // constructor
+
+    /*************************************************************************************
+     * Add a value to the sketch.
+     * @param v  the (non-null) value to add
+     */
+    void add (Object v)
+    {
+        var h   = BloomFilter.mix (v.hashCode ());
+        var r   = (int) (h >>> (64 - P));
+        var rho = (byte) (Long.numberOfLeadingZeros ((h << P) | (1L << (P - 1))) + 1);
+        if (rho > reg [r]) reg [r] = rho;
+    } // add
+
+    /*************************************************************************************
+     * Return the estimated number of distinct values added.
+     * @return  the estimated cardinality
+     */
+    double estimate ()
+    {
+        var sum   = 0.0;
+        var zeros = 0;
+        for (var r : reg) {
+            sum += Math.scalb (1.0, -r);
+            if (r == 0) zeros++;
+        } // for
+        var alpha = 0.7213 / (1 + 1.079 / M);
+        var e     = alpha * M * M / sum;
+        if (e <= 2.5 * M && zeros > 0) e = M * Math.log ((double) M / zeros);   // linear counting
+        return e;
+    } // estimate
+
+} // HyperLogLog class
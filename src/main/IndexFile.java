@@ -0,0 +1,90 @@
+package main;
+/*****************************************************************************************
+ * @file  IndexFile.java
+ *
+ * @author   John Miller
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static java.lang.System.out;
+
+/*****************************************************************************************
+ * The IndexFile class reads and writes the compact on-disk form of a table's index.
+ * Rather than serializing every node or bucket of the index map, only the tuple
+ * positions (row numbers) of the indexed tuples are stored, in key order.  The header
+ * records the checksum of the table file the index was built against and the number
+ * of tuples, so a stale index is detected and rebuilt rather than trusted.
+ */
+class IndexFile
+{
+    /** Magic number identifying index files
+     */
+    private static final int MAGIC = 0x49445831;                 // "IDX1"
+
+    /*************************************************************************************
+     * Write the index file.
+     * @param file      the index file to write
+     * @param checksum  the checksum of the table file the index belongs to
+     * @param nTuples   the number of tuples in the table
+     * @param keyCols   the column positions of the key attributes
+     * @param rows      the row numbers of the indexed tuples, in key order
+     * @throws IOException  if the file cannot be written
+     */
+    static void write (File file, long checksum, int nTuples, int [] keyCols, int [] rows)
+           throws IOException
+    {
+        try (var dos = new DataOutputStream (new BufferedOutputStream (new FileOutputStream (file)))) {
+            dos.writeInt (MAGIC);
+            dos.writeLong (checksum);
+            dos.writeInt (nTuples);
+            dos.writeInt (keyCols.length);
+            for (var c : keyCols) dos.writeInt (c);
+            dos.writeInt (rows.length);
+            for (var r : rows) dos.writeInt (r);
+        } // try
+    } // write
+
+    /*************************************************************************************
+     * Read the index file, returning the row numbers of the indexed tuples in key order.
+     * Returns null if the file is missing, corrupt or stale (i.e., it was built against
+     * a different table file, tuple count or key).
+     * @param file      the index file to read
+     * @param checksum  the checksum of the table file just loaded
+     * @param nTuples   the number of tuples in the loaded table
+     * @param keyCols   the column positions of the key attributes
+     * @return  the row numbers in key order, or null if the index must be rebuilt
+     */
+    static int [] read (File file, long checksum, int nTuples, int [] keyCols)
+    {
+        if (! file.exists ()) return null;
+
+        try (var dis = new DataInputStream (new BufferedInputStream (new FileInputStream (file)))) {
+            if (dis.readInt () != MAGIC || dis.readLong () != checksum || dis.readInt () != nTuples) {
+                out.println ("IndexFile.read: stale index " + file);
+                return null;
+            } // if
+            var nCols = dis.readInt ();
+            if (nCols != keyCols.length) return null;
+            for (int j = 0; j < nCols; j++) if (dis.readInt () != keyCols [j]) return null;
+
+            var rows = new int [dis.readInt ()];
+            for (int i = 0; i < rows.length; i++) {
+                rows [i] = dis.readInt ();
+                if (rows [i] < 0 || rows [i] >= nTuples) return null;
+            } // for
+            return rows;
+        } catch (IOException ex) {
+            out.println ("IndexFile.read: IO Exception " + ex);
+            return null;
+        } // try
+    } // read
+
+} // IndexFile class
@@ -68,6 +68,16 @@ public class KeyType
         return compareTo ((KeyType) k) == 0;
     } // equals
 
+    /*************************************************************************************
+     * Return the number of attribute values in this key (fewer than the table's key
+     * attributes for a key prefix).
+     * @return  the number of values
+     */
+    public int size ()
+    {
+        return key.length;
+    } // size
+
     /*************************************************************************************
      * Compute a hash code for this object (equal objects should produce the same hash code).
      * @return  an integer hash code value
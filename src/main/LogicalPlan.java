@@ -0,0 +1,348 @@
+package main;
+/*****************************************************************************************
+ * @file  LogicalPlan.java
+ *
+ * @author   John Miller
+ */
+
+import java.lang.invoke.MethodHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/*****************************************************************************************
+ * The LogicalPlan class represents a relational algebra query over tables as a tree of
+ * scan, select, project and join nodes, built the same way queries are written:
+ * <pre>
+ *     var q = LogicalPlan.scan (movie).join ("studioName", "name", LogicalPlan.scan (studio))
+ *                        .select ("year", "<", 1980).project ("title presNo");
+ *     q.optimize ().execute ().print ();
+ * </pre>
+ * Executed as is, each node runs the corresponding Table operator in the order written,
+ * each join with the algorithm Table.equiJoin picks at run time.  optimize returns an
+ * equivalent plan chosen by the cost-based Optimizer, and explain shows a plan with its
+ * join methods (once executed, those picked at run time) and estimated cardinalities.
+ */
+public abstract class LogicalPlan
+{
+    /** The join algorithms: nested loop (Table.join), index (Table.i_join, probing the
+     *  left input's key index with the right input), hash (Table.h_join, building on
+     *  the right input), Grace hash and merge, or AUTO to let Table.equiJoin choose
+     *  one at run time (see Table.joinMethod)
+     */
+    public enum JoinMethod { NESTED_LOOP, INDEX, HASH, GRACE_HASH, MERGE, AUTO }
+
+    /** The estimated number of tuples produced (negative when not estimated)
+     */
+    double estimate = -1;
+
+    /*************************************************************************************
+     * Return a plan scanning the table.
+     * @param table  the table to scan
+     * @return  the scan plan
+     */
+    public static LogicalPlan scan (Table table)
+    {
+        return new Scan (table);
+    } // scan
+
+    /*************************************************************************************
+     * Return a plan selecting the tuples of this plan with "attr op value", where op is
+     * one of ==, !=, <, <=, >, >=.
+     * @param attr   the attribute to compare
+     * @param op     the comparison operator
+     * @param value  the value to compare with
+     * @return  the select plan
+     */
+    public LogicalPlan select (String attr, String op, Comparable value)
+    {
+        return new Select (this, attr, op, value);
+    } // select
+
+    /*************************************************************************************
+     * Return a plan projecting the tuples of this plan onto the given attributes.
+     * @param attributes  the attributes to project onto
+     * @return  the project plan
+     */
+    public LogicalPlan project (String attributes)
+    {
+        return new Project (this, attributes.split (" "));
+    } // project
+
+    /*************************************************************************************
+     * Return a plan equi-joining the tuples of this plan with those of right.
+     * @param attributes1  the join attributes of this plan
+     * @param attributes2  the join attributes of right
+     * @param right        the right input
+     * @return  the join plan
+     */
+    public LogicalPlan join (String attributes1, String attributes2, LogicalPlan right)
+    {
+        return new Join (this, right, attributes1.split (" "), attributes2.split (" "), JoinMethod.AUTO);
+    } // join
+
+    /*************************************************************************************
+     * Return the equivalent plan chosen by the cost-based optimizer.
+     * @return  the optimized plan
+     */
+    public LogicalPlan optimize ()
+    {
+        return new Optimizer ().optimize (this);
+    } // optimize
+
+    /*************************************************************************************
+     * Execute the plan.
+     * @return  the table produced by the plan
+     */
+    public abstract Table execute ();
+
+    /*************************************************************************************
+     * Execute the plan with its operators fused into pipelines (see Pipeline): each join
+     * input that is built on is materialized, and the rest of the plan runs in one loop
+     * over the driving table that allocates only the result tuples.  The result has the
+     * same tuples as execute's, possibly in another order.
+     * @return  the table produced by the plan
+     */
+    public Table executeFused ()
+    {
+        return new Pipeline ().run (this);
+    } // executeFused
+
+    /*************************************************************************************
+     * Return the names of the attributes produced by the plan.
+     * @return  the attribute names
+     */
+    abstract String [] attributes ();
+
+    /*************************************************************************************
+     * Return the plan tree, one node per line, with the estimated cardinalities.
+     * @return  the plan as text
+     */
+    public String explain ()
+    {
+        var sb = new StringBuilder ();
+        explain (sb, 0);
+        return sb.toString ();
+    } // explain
+
+    /*************************************************************************************
+     * Append this node and its inputs to the plan text.
+     * @param sb     the plan text
+     * @param depth  the depth of this node in the tree
+     */
+    void explain (StringBuilder sb, int depth)
+    {
+        for (int d = 0; d < depth; d++) sb.append ("  ");
+        sb.append (describe ());
+        if (estimate >= 0) sb.append ("  (est ").append (Math.round (estimate)).append (" rows)");
+        sb.append ('\n');
+        for (var input : inputs ()) input.explain (sb, depth + 1);
+    } // explain
+
+    /*************************************************************************************
+     * Return a one line description of this node.
+     * @return  the description
+     */
+    abstract String describe ();
+
+    /*************************************************************************************
+     * Return the inputs of this node.
+     * @return  the input plans
+     */
+    abstract LogicalPlan [] inputs ();
+
+    /*************************************************************************************
+     * Return the position of the attribute among the given ones.
+     * @param attrs  the attribute names
+     * @param attr   the attribute to find
+     * @return  its position
+     * @throws IllegalArgumentException  if it is not there
+     */
+    static int position (String [] attrs, String attr)
+    {
+        for (int j = 0; j < attrs.length; j++) if (attrs [j].equals (attr)) return j;
+        throw new IllegalArgumentException ("LogicalPlan: attribute " + attr + " does not exist");
+    } // position
+
+    /*****************************************************************************************
+     * The Scan class reads a table.
+     */
+    static class Scan extends LogicalPlan
+    {
+        final Table table;
+
+        Scan (Table _table)            { table = _table; }
+        public Table execute ()        { return table; }
+        String [] attributes ()        { return table.getAttributes (); }
+        String describe ()             { return "SCAN " + table.getName (); }
+        LogicalPlan [] inputs ()       { return new LogicalPlan [0]; }
+
+    } // Scan class
+
+    /*****************************************************************************************
+     * The Select class keeps the input tuples satisfying "attr op value".  A stack of
+     * selects is executed together: an equality on the whole (single attribute) key of
+     * a scanned table is answered with the key index, and the others are compiled into one
+     * predicate (see QueryCompiler) applied in a single pass.
+     */
+    static class Select extends LogicalPlan
+    {
+        final LogicalPlan input;
+        final String attr;
+        final int op;
+        final Comparable value;
+
+        Select (LogicalPlan _input, String _attr, String _op, Comparable _value)
+        {
+            input = _input;
+            attr  = _attr;
+            op    = Arrays.asList (ColumnBatch.OPS).indexOf (_op);
+            value = _value;
+            if (op < 0) throw new IllegalArgumentException ("LogicalPlan: unknown operator " + _op);
+            position (input.attributes (), attr);
+        } // constructor
+
+        public Table execute ()
+        {
+            var conds = new ArrayList <Select> ();                       // this and the selects below it
+            LogicalPlan node = this;
+            for ( ; node instanceof Select; node = ((Select) node).input) conds.add ((Select) node);
+            var table = node.execute ();
+
+            for (var s : conds) {                                        // only a base table's key is unique
+                if (node instanceof Scan && s.op == ColumnBatch.EQ && Arrays.equals (table.getKey (), new String [] { s.attr })) {
+                    table = table.select (new KeyType (s.value));
+                    conds.remove (s);
+                    break;
+                } // if
+            } // for
+            if (conds.isEmpty ()) return table;
+
+            MethodHandle predicate = null;
+            for (var s : conds) {
+                var p = QueryCompiler.predicate (table.getDomain (), table.col (s.attr), s.op, s.value);
+                predicate = (predicate == null) ? p : QueryCompiler.and (predicate, p);
+            } // for
+            return table.select (predicate);
+        } // execute
+
+        String [] attributes ()  { return input.attributes (); }
+        String describe ()       { return "SELECT " + attr + " " + ColumnBatch.OPS [op] + " " + value; }
+        LogicalPlan [] inputs () { return new LogicalPlan [] { input }; }
+
+    } // Select class
+
+    /*****************************************************************************************
+     * The Project class keeps the given attributes of its input (see Table.project).
+     */
+    static class Project extends LogicalPlan
+    {
+        final LogicalPlan input;
+        final String [] attrs;
+
+        Project (LogicalPlan _input, String [] _attrs)
+        {
+            input = _input;
+            attrs = _attrs;
+            for (var a : attrs) position (input.attributes (), a);
+        } // constructor
+
+        public Table execute ()  { return input.execute ().project (String.join (" ", attrs)); }
+        String [] attributes ()  { return attrs; }
+        String describe ()       { return "PROJECT " + String.join (" ", attrs); }
+        LogicalPlan [] inputs () { return new LogicalPlan [] { input }; }
+
+    } // Project class
+
+    /*****************************************************************************************
+     * The Join class equi-joins its inputs with the given join method.  As in Table.join,
+     * the attributes of the right input that duplicate attributes of the left get a "2".
+     * For AUTO, the method chosen at run time is kept for explain.
+     */
+    static class Join extends LogicalPlan
+    {
+        final LogicalPlan left, right;
+        final String [] attrs1, attrs2;
+        final JoinMethod method;
+        JoinMethod chosen;
+
+        Join (LogicalPlan _left, LogicalPlan _right, String [] _attrs1, String [] _attrs2, JoinMethod _method)
+        {
+            left   = _left;
+            right  = _right;
+            attrs1 = _attrs1;
+            attrs2 = _attrs2;
+            method = _method;
+            if (attrs1.length != attrs2.length)
+                throw new IllegalArgumentException ("LogicalPlan: join attribute lists differ in length");
+            for (var a : attrs1) position (left.attributes (), a);
+            for (var a : attrs2) position (right.attributes (), a);
+        } // constructor
+
+        public Table execute ()
+        {
+            var t1 = left.execute ();
+            var t2 = right.execute ();
+            var a1 = String.join (" ", attrs1);
+            var a2 = String.join (" ", attrs2);
+            switch (method) {
+            case INDEX:       return t1.i_join (a1, a2, t2);
+            case HASH:        return t1.h_join (a1, a2, t2);
+            case NESTED_LOOP: return t1.join (a1, a2, t2);
+            case AUTO:        chosen = t1.joinMethod (attrs1, attrs2, t2);
+                              return t1.equiJoin (attrs1, attrs2, t2, chosen);
+            default:          return t1.equiJoin (attrs1, attrs2, t2, method);
+            } // switch
+        } // execute
+
+        String [] attributes ()
+        {
+            var la    = left.attributes ();
+            var ra    = right.attributes ();
+            var attrs = ArrayUtil.concat (la, ra);
+            for (int j = 0; j < ra.length; j++) {
+                if (Arrays.asList (la).contains (ra [j])) attrs [la.length + j] = ra [j] + "2";
+            } // for
+            return attrs;
+        } // attributes
+
+        String describe ()
+        {
+            var on = new StringBuilder ();
+            for (int j = 0; j < attrs1.length; j++) {
+                on.append (j == 0 ? "" : " AND ").append (attrs1 [j]).append (" = ").append (attrs2 [j]);
+            } // for
+            if (method == JoinMethod.AUTO && chosen != null)
+                return chosen.toString ().replace ('_', ' ') + " JOIN ON " + on + "  (chosen at run time)";
+            return method.toString ().replace ('_', ' ') + " JOIN ON " + on;
+        } // describe
+
+        LogicalPlan [] inputs () { return new LogicalPlan [] { left, right }; }
+
+    } // Join class
+
+    /*****************************************************************************************
+     * The Arrange class puts the columns of its input back into the order (and names) of
+     * the original plan after the optimizer has reordered its joins (see Table.arrange).
+     */
+    static class Arrange extends LogicalPlan
+    {
+        final LogicalPlan input;
+        final int [] cols;
+        final String [] names, key;
+
+        Arrange (LogicalPlan _input, int [] _cols, String [] _names, String [] _key)
+        {
+            input = _input;
+            cols  = _cols;
+            names = _names;
+            key   = _key;
+        } // constructor
+
+        public Table execute ()  { return input.execute ().arrange (cols, names, key); }
+        String [] attributes ()  { return names; }
+        String describe ()       { return "ARRANGE " + String.join (" ", names); }
+        LogicalPlan [] inputs () { return new LogicalPlan [] { input }; }
+
+    } // Arrange class
+
+} // LogicalPlan class
@@ -0,0 +1,575 @@
+package main;
+/*****************************************************************************************
+ * @file  MaterializedView.java
+ *
+ * @author   John Miller
+ */
+
+import java.lang.invoke.MethodHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*****************************************************************************************
+ * The MaterializedView class keeps the result of a select-project-join LogicalPlan
+ * (optionally grouped and aggregated) as a table that is maintained incrementally as
+ * tuples are inserted into the base tables, rather than recomputed:
+ * <pre>
+ *     var v = new MaterializedView ("castList", LogicalPlan.scan (starsIn)
+ *                 .join ("movieTitle movieYear", "title year", LogicalPlan.scan (movie)));
+ *     starsIn.insert (cast1);                                       // appended to v.table ()
+ * </pre>
+ * An inserted tuple is pushed up the plan as a delta: selections filter it, projections
+ * map it and at a join it is matched against the other input's current tuples, found
+ * either through the key index of the other input's base table (when that input only
+ * selects and projects a table on its key) or through a hash table on the join
+ * attributes that the view keeps of the other input's result.  The resulting tuples are
+ * appended to the view (skipping duplicates when the final projection drops the key),
+ * or added to the aggregates of their groups for a grouped view.
+ * <p>
+ * The view starts from a snapshot of the plan's result taken while holding the locks of
+ * its tables, and skips the inserted tuples the snapshot already holds (by table
+ * version).  Should updating it fail (e.g., a predicate throws), the view is marked
+ * broken and stops being maintained, without failing the insert.
+ * <p>
+ * A projection dropping its input's key (so removing duplicates) may only come last,
+ * and a table may be scanned only once.  Inserts into the tables of one view are assumed
+ * not to run concurrently; the view table is read-only for users.
+ */
+public class MaterializedView
+{
+    /** The name of the view
+     */
+    private final String name;
+
+    /** The tree of delta operators mirroring the plan
+     */
+    private Node root;
+
+    /** The result tuples seen so far, when the final projection drops the key (else null)
+     */
+    private HashSet <KeyType> seen;
+
+    /** The view's tuples (for a grouped view, built from the aggregates when read)
+     */
+    private Table table;
+
+    /** For a grouped view: the aggregates of each group, and the names, domains and key
+     *  of the result's attributes (else null)
+     */
+    private HashAggregator agg;
+    private String [] aggAttrs, aggKey;
+    private Class [] aggDomain;
+
+    /** Whether the aggregates changed since the grouped view's table was built
+     */
+    private boolean dirty = false;
+
+    /** The listener added to each base table
+     */
+    private final Map <Table, Table.InsertListener> listeners = new IdentityHashMap <> ();
+
+    /** The version of each base table when the initial snapshot was taken
+     */
+    private final Map <Table, Long> snapshot = new IdentityHashMap <> ();
+
+    /** What made the view fail to be maintained (null if it has not)
+     */
+    private Throwable broken;
+
+    /*************************************************************************************
+     * Construct a view of the plan's result.
+     * @param _name  the name of the view
+     * @param plan   the select-project-join plan defining it
+     */
+    public MaterializedView (String _name, LogicalPlan plan)
+    {
+        this (_name, plan, null, null);
+    } // constructor
+
+    /*************************************************************************************
+     * Construct a view grouping the plan's result and computing aggregates for each group
+     * (see Table.groupBy).
+     * @param _name       the name of the view
+     * @param plan        the select-project-join plan whose result is grouped
+     * @param groupAttrs  the attributes to group by (blank for a single group)
+     * @param aggregates  the aggregates to compute, e.g., "count(*) avg(length)"
+     */
+    public MaterializedView (String _name, LogicalPlan plan, String groupAttrs, String aggregates)
+    {
+        name = _name;
+        var tables = new ArrayList <Table> ();
+        scans (plan, tables);
+        for (int i = 0; i < tables.size (); i++) {
+            if (tables.subList (0, i).contains (tables.get (i)))
+                throw new IllegalArgumentException ("MaterializedView: table " + tables.get (i).getName () + " is scanned twice");
+        } // for
+
+        synchronized (this) {                                            // inserts wait until the view is built
+            for (var base : tables) {
+                Table.InsertListener listener = (t, version) -> inserted (base, t, version);
+                listeners.put (base, listener);
+                base.addListener (listener);
+            } // for
+            try {
+                build (plan, groupAttrs, aggregates, tables, 0);
+            } catch (RuntimeException ex) {
+                close ();
+                throw ex;
+            } // try
+        } // synchronized
+    } // constructor
+
+    /*************************************************************************************
+     * Lock the base tables from the i-th on, then build the view from a snapshot of its
+     * plan's result and record the versions of the tables it reflects.  With the locks
+     * held, no tuple can be added to a table between the snapshot and the version read.
+     * @param plan        the plan defining the view
+     * @param groupAttrs  the attributes to group by (null if not grouped)
+     * @param aggregates  the aggregates to compute (null if not grouped)
+     * @param tables      the base tables
+     * @param i           the first table not locked yet
+     */
+    private void build (LogicalPlan plan, String groupAttrs, String aggregates, List <Table> tables, int i)
+    {
+        if (i < tables.size ()) {
+            synchronized (tables.get (i)) { build (plan, groupAttrs, aggregates, tables, i + 1); }
+            return;
+        } // if
+        for (var base : tables) snapshot.put (base, base.version ());
+        root = node (plan, true);
+
+        var initial = plan.execute ();
+        seen = dropsKey (plan) ? new HashSet <> () : null;
+        if (seen != null) for (var t : initial.getTuples ()) seen.add (new KeyType (t));
+
+        if (aggregates == null) {
+            table = new Table (name, initial.getAttributes (), initial.getDomain (), initial.getKey (),
+                               new ArrayList <> (initial.getTuples ()));
+            table.freeze ();
+        } else {
+            var gAttrs = groupAttrs.trim ().isEmpty () ? new String [0] : groupAttrs.trim ().split (" ");
+            var specs  = aggregates.trim ().split (" ");
+            aggAttrs   = new String [gAttrs.length + specs.length];
+            aggDomain  = new Class [aggAttrs.length];
+            agg        = initial.aggregator (gAttrs, specs, aggAttrs, aggDomain);
+            if (agg == null) throw new IllegalArgumentException ("MaterializedView: invalid grouping or aggregate");
+            aggKey = (gAttrs.length > 0) ? gAttrs : aggAttrs;
+            for (var t : initial.getTuples ()) agg.add (t);
+            dirty = true;
+        } // if
+    } // build
+
+    /*************************************************************************************
+     * Return the view's current tuples as a (read-only) table.
+     * @return  the view table
+     */
+    public synchronized Table table ()
+    {
+        if (broken != null) throw new IllegalStateException ("MaterializedView: " + name + " is broken", broken);
+        if (dirty) {
+            table = new Table (name, aggAttrs, aggDomain, aggKey, agg.result ());
+            table.freeze ();
+            dirty = false;
+        } // if
+        return table;
+    } // table
+
+    /*************************************************************************************
+     * Stop maintaining the view: it no longer listens to inserts into its tables.
+     */
+    public synchronized void close ()
+    {
+        for (var e : listeners.entrySet ()) e.getKey ().removeListener (e.getValue ());
+        listeners.clear ();
+    } // close
+
+    /*************************************************************************************
+     * Update the view for a tuple inserted into one of its base tables, unless the
+     * initial snapshot already holds it.  A failure breaks the view rather than the
+     * insert.
+     * @param base     the table inserted into
+     * @param t        the tuple inserted
+     * @param version  the table's version just after the tuple was added
+     */
+    private synchronized void inserted (Table base, Comparable [] t, long version)
+    {
+        if (broken != null || version <= snapshot.get (base)) return;
+        try {
+            for (var d : root.delta (base, t)) {
+                if (seen != null && ! seen.add (new KeyType (d))) continue;
+                if (agg == null) table.append (d);
+                else { agg.add (d); dirty = true; }
+            } // for
+        } catch (Throwable ex) {
+            broken = ex;
+            System.out.println ("MaterializedView: " + name + " is broken and no longer maintained: " + ex);
+            close ();
+        } // try
+    } // inserted
+
+    /*************************************************************************************
+     * Build the delta operator for a plan node.
+     * @param plan  the plan node
+     * @param top   whether it is the root (where a projection may drop the key)
+     * @return  the delta operator
+     */
+    private static Node node (LogicalPlan plan, boolean top)
+    {
+        if (plan instanceof LogicalPlan.Scan) return new ScanNode (((LogicalPlan.Scan) plan).table);
+
+        if (plan instanceof LogicalPlan.Select) {
+            var s  = (LogicalPlan.Select) plan;
+            var in = node (s.input, false);
+            return new SelectNode (in, QueryCompiler.predicate (in.domain, LogicalPlan.position (in.names, s.attr), s.op, s.value));
+        } // if
+
+        if (plan instanceof LogicalPlan.Project || plan instanceof LogicalPlan.Arrange) {
+            var input = (plan instanceof LogicalPlan.Project) ? ((LogicalPlan.Project) plan).input
+                                                              : ((LogicalPlan.Arrange) plan).input;
+            if (! top && dropsKey (plan))
+                throw new IllegalArgumentException ("MaterializedView: only the final projection may drop the key");
+            var in   = node (input, false);
+            var cols = (plan instanceof LogicalPlan.Arrange) ? ((LogicalPlan.Arrange) plan).cols
+                                                             : positions (in.names, plan.attributes ());
+            return new ProjectNode (in, cols, plan.attributes ());
+        } // if
+
+        if (plan instanceof LogicalPlan.Join) {
+            var jn = (LogicalPlan.Join) plan;
+            var l  = node (jn.left, false);
+            var r  = node (jn.right, false);
+            return new JoinNode (l, r, side (jn.left, l, jn.attrs1), side (jn.right, r, jn.attrs2),
+                                 positions (l.names, jn.attrs1), positions (r.names, jn.attrs2), jn.attributes ());
+        } // if
+
+        throw new IllegalArgumentException ("MaterializedView: unsupported plan node " + plan.describe ());
+    } // node
+
+    /*************************************************************************************
+     * Make the access path to a join input's tuples by the values of its join attributes:
+     * its base table's key index if the input only selects and projects that table and
+     * the join attributes are the table's key, else a hash table on its result.
+     * @param plan   the join input
+     * @param n      its delta operator
+     * @param attrs  its join attributes
+     * @return  the access path
+     */
+    private static Side side (LogicalPlan plan, Node n, String [] attrs)
+    {
+        var conds = new ArrayList <LogicalPlan.Select> ();
+        var node  = plan;
+        while (node instanceof LogicalPlan.Select || node instanceof LogicalPlan.Project) {
+            if (node instanceof LogicalPlan.Select) {
+                conds.add ((LogicalPlan.Select) node);
+                node = ((LogicalPlan.Select) node).input;
+            } else {
+                node = ((LogicalPlan.Project) node).input;
+            } // if
+        } // while
+
+        if (node instanceof LogicalPlan.Scan) {
+            var table = ((LogicalPlan.Scan) node).table;
+            var key   = table.getKey ();
+            if (attrs.length == key.length && Arrays.asList (attrs).containsAll (Arrays.asList (key))) {
+                MethodHandle filter = null;                              // names are the table's (projections keep the key)
+                for (var s : conds) {
+                    var p = QueryCompiler.predicate (table.getDomain (), table.col (s.attr), s.op, s.value);
+                    filter = (filter == null) ? p : QueryCompiler.and (filter, p);
+                } // for
+                var keyOrder = new int [key.length];
+                for (int k = 0; k < key.length; k++) keyOrder [k] = Arrays.asList (attrs).indexOf (key [k]);
+                return new IndexSide (table, keyOrder, positions (table.getAttributes (), key), filter,
+                                      positions (table.getAttributes (), n.names));
+            } // if
+        } // if
+        return new HashSide (plan.execute ().getTuples (), positions (n.names, attrs));
+    } // side
+
+    /*************************************************************************************
+     * Determine whether the plan is a projection (or arrangement) dropping its input's
+     * key, so that it removes duplicates.
+     * @param plan  the plan
+     * @return  whether it drops the key
+     */
+    private static boolean dropsKey (LogicalPlan plan)
+    {
+        if (plan instanceof LogicalPlan.Project) {
+            var p = (LogicalPlan.Project) plan;
+            return ! Arrays.asList (p.attrs).containsAll (Arrays.asList (Pipeline.key (p.input)));
+        } // if
+        if (plan instanceof LogicalPlan.Arrange) {
+            var a = (LogicalPlan.Arrange) plan;
+            return ! Arrays.asList (a.names).containsAll (Arrays.asList (a.key));
+        } // if
+        return false;
+    } // dropsKey
+
+    /*************************************************************************************
+     * Collect the tables the plan scans, in order.
+     * @param plan    the plan
+     * @param tables  the tables scanned
+     */
+    private static void scans (LogicalPlan plan, List <Table> tables)
+    {
+        if (plan instanceof LogicalPlan.Scan) tables.add (((LogicalPlan.Scan) plan).table);
+        for (var input : plan.inputs ()) scans (input, tables);
+    } // scans
+
+    /*************************************************************************************
+     * Return the positions of the given attributes among the names.
+     * @param names  the attribute names
+     * @param attrs  the attributes to find
+     * @return  their positions
+     */
+    private static int [] positions (String [] names, String [] attrs)
+    {
+        var cols = new int [attrs.length];
+        for (int j = 0; j < attrs.length; j++) cols [j] = LogicalPlan.position (names, attrs [j]);
+        return cols;
+    } // positions
+
+    /*************************************************************************************
+     * Return the values at the given positions of a tuple as a key, or null if one is null.
+     * @param t     the tuple
+     * @param cols  the positions
+     * @return  the key
+     */
+    private static KeyType keyOf (Comparable [] t, int [] cols)
+    {
+        var v = new Comparable [cols.length];
+        for (int j = 0; j < cols.length; j++) {
+            v [j] = t [cols [j]];
+            if (v [j] == null) return null;
+        } // for
+        return new KeyType (v);
+    } // keyOf
+
+    /*****************************************************************************************
+     * The Node class computes the tuples a plan node adds to its result when a tuple is
+     * inserted into a base table.
+     */
+    private abstract static class Node
+    {
+        final String [] names;
+        final Class [] domain;
+
+        Node (String [] _names, Class [] _domain)  { names = _names; domain = _domain; }
+
+        abstract List <Comparable []> delta (Table base, Comparable [] t);
+        abstract boolean scans (Table base);
+
+    } // Node class
+
+    private static class ScanNode extends Node
+    {
+        final Table table;
+
+        ScanNode (Table _table)
+        {
+            super (_table.getAttributes (), _table.getDomain ());
+            table = _table;
+        } // constructor
+
+        List <Comparable []> delta (Table base, Comparable [] t)
+        {
+            return (base == table) ? Collections.singletonList (t) : Collections.emptyList ();
+        } // delta
+
+        boolean scans (Table base)  { return base == table; }
+
+    } // ScanNode class
+
+    private static class SelectNode extends Node
+    {
+        final Node input;
+        final MethodHandle predicate;
+
+        SelectNode (Node _input, MethodHandle _predicate)
+        {
+            super (_input.names, _input.domain);
+            input     = _input;
+            predicate = _predicate;
+        } // constructor
+
+        List <Comparable []> delta (Table base, Comparable [] t)
+        {
+            var out = new ArrayList <Comparable []> ();
+            for (var d : input.delta (base, t)) if (QueryCompiler.test (predicate, d)) out.add (d);
+            return out;
+        } // delta
+
+        boolean scans (Table base)  { return input.scans (base); }
+
+    } // SelectNode class
+
+    private static class ProjectNode extends Node
+    {
+        final Node input;
+        final MethodHandle projection;
+
+        ProjectNode (Node _input, int [] cols, String [] _names)
+        {
+            super (_names, pick (_input.domain, cols));
+            input      = _input;
+            projection = QueryCompiler.projection (cols);
+        } // constructor
+
+        List <Comparable []> delta (Table base, Comparable [] t)
+        {
+            var out = new ArrayList <Comparable []> ();
+            for (var d : input.delta (base, t)) out.add (QueryCompiler.apply (projection, d));
+            return out;
+        } // delta
+
+        boolean scans (Table base)  { return input.scans (base); }
+
+        private static Class [] pick (Class [] domain, int [] cols)
+        {
+            var d = new Class [cols.length];
+            for (int j = 0; j < cols.length; j++) d [j] = domain [cols [j]];
+            return d;
+        } // pick
+
+    } // ProjectNode class
+
+    /*****************************************************************************************
+     * The JoinNode class matches the delta of one input with the current tuples of the
+     * other (a symmetric join), keeping the inputs' hash tables, if any, up to date.
+     */
+    private static class JoinNode extends Node
+    {
+        final Node left, right;
+        final Side leftSide, rightSide;
+        final int [] cols1, cols2;
+
+        JoinNode (Node _left, Node _right, Side _leftSide, Side _rightSide, int [] _cols1, int [] _cols2, String [] _names)
+        {
+            super (_names, ArrayUtil.concat (_left.domain, _right.domain));
+            left      = _left;
+            right     = _right;
+            leftSide  = _leftSide;
+            rightSide = _rightSide;
+            cols1     = _cols1;
+            cols2     = _cols2;
+        } // constructor
+
+        List <Comparable []> delta (Table base, Comparable [] t)
+        {
+            var out = new ArrayList <Comparable []> ();
+            if (left.scans (base)) {
+                var d = left.delta (base, t);
+                leftSide.add (d);
+                for (var l : d) for (var r : rightSide.matches (l, cols1)) out.add (ArrayUtil.concat (l, r));
+            } else if (right.scans (base)) {
+                var d = right.delta (base, t);
+                rightSide.add (d);
+                for (var r : d) for (var l : leftSide.matches (r, cols2)) out.add (ArrayUtil.concat (l, r));
+            } // if
+            return out;
+        } // delta
+
+        boolean scans (Table base)  { return left.scans (base) || right.scans (base); }
+
+    } // JoinNode class
+
+    /*****************************************************************************************
+     * The Side class finds the current tuples of a join input with given join values.
+     */
+    private abstract static class Side
+    {
+        abstract List <Comparable []> matches (Comparable [] probe, int [] probeCols);
+        void add (List <Comparable []> delta) {}
+
+    } // Side class
+
+    /*****************************************************************************************
+     * The IndexSide class looks the join values up in the key index of the input's base
+     * table (which already holds any tuple just inserted), then applies the input's
+     * selections and projection.  Should the table come to have duplicate keys, so that
+     * its index misses tuples, it scans the table instead.
+     */
+    private static class IndexSide extends Side
+    {
+        final Table table;
+        final int [] keyOrder, keyCols, cols;
+        final MethodHandle filter;
+        final MethodHandle projection;
+
+        IndexSide (Table _table, int [] _keyOrder, int [] _keyCols, MethodHandle _filter, int [] _cols)
+        {
+            table      = _table;
+            keyOrder   = _keyOrder;
+            keyCols    = _keyCols;
+            filter     = _filter;
+            cols       = _cols;
+            projection = QueryCompiler.projection (cols);
+        } // constructor
+
+        List <Comparable []> matches (Comparable [] probe, int [] probeCols)
+        {
+            var v = new Comparable [keyOrder.length];
+            for (int k = 0; k < v.length; k++) {
+                v [k] = probe [probeCols [keyOrder [k]]];
+                if (v [k] == null) return Collections.emptyList ();
+            } // for
+            var out   = new ArrayList <Comparable []> (1);
+            var index = table.uniqueIndex ();
+            if (index != null) {
+                var m = index.get (new KeyType (v));
+                if (m != null) keep (m, out);
+            } else {
+                for (var m : table.getTuples ()) {
+                    var same = true;
+                    for (int k = 0; same && k < v.length; k++) same = v [k].equals (m [keyCols [k]]);
+                    if (same) keep (m, out);
+                } // for
+            } // if
+            return out;
+        } // matches
+
+        private void keep (Comparable [] m, List <Comparable []> out)
+        {
+            if (filter == null || QueryCompiler.test (filter, m)) out.add (QueryCompiler.apply (projection, m));
+        } // keep
+
+    } // IndexSide class
+
+    /*****************************************************************************************
+     * The HashSide class keeps the input's result in a hash table on its join attributes,
+     * adding the input's deltas to it.
+     */
+    private static class HashSide extends Side
+    {
+        final int [] cols;
+        final HashMap <KeyType, List <Comparable []>> table = new HashMap <> ();
+
+        HashSide (List <Comparable []> tuples, int [] _cols)
+        {
+            cols = _cols;
+            add (tuples);
+        } // constructor
+
+        List <Comparable []> matches (Comparable [] probe, int [] probeCols)
+        {
+            var k = keyOf (probe, probeCols);
+            var m = (k == null) ? null : table.get (k);
+            return (m == null) ? Collections.emptyList () : m;
+        } // matches
+
+        void add (List <Comparable []> delta)
+        {
+            for (var t : delta) {
+                var k = keyOf (t, cols);
+                if (k != null) table.computeIfAbsent (k, x -> new ArrayList <> ()).add (t);
+            } // for
+        } // add
+
+    } // HashSide class
+
+} // MaterializedView class
@@ -0,0 +1,175 @@
+package main;
+/*****************************************************************************************
+ * @file  MorselScheduler.java
+ *
+ * @author   John Miller
+ */
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/*****************************************************************************************
+ * The MorselScheduler class runs query pipelines over a table's tuples on a fixed pool
+ * of worker threads, morsel by morsel.  A query's input is cut into morsels of MORSEL
+ * consecutive tuples, and the pipeline (e.g., a select followed by a project) is run on
+ * each morsel as a separate task.  Workers take the next morsel of the query at the
+ * head of a round-robin queue and put the query back at its tail, so
+ * <ul>
+ *   <li> concurrent queries share the workers fairly: a short query waits for at most
+ *        one morsel of each running query, not for a whole long query, and
+ *   <li> a single query keeps every worker busy (idle workers take its morsels).
+ * </ul>
+ * Each worker processes a morsel's consecutive tuples in order, and the results of the
+ * morsels are concatenated in morsel order.
+ */
+public class MorselScheduler
+{
+    /** The number of tuples per morsel
+     */
+    static final int MORSEL = 10_000;
+
+    /** The queries with morsels left to hand out, in round-robin order
+     */
+    private final Deque <Query <?>> active = new ArrayDeque <> ();
+
+    /** The worker threads
+     */
+    private final Thread [] workers;
+
+    /** Whether the scheduler has been shut down
+     */
+    private boolean shutdown = false;
+
+    /*************************************************************************************
+     * Construct a scheduler with the given number of worker threads.
+     * @param nWorkers  the number of worker threads
+     */
+    public MorselScheduler (int nWorkers)
+    {
+        workers = new Thread [Math.max (1, nWorkers)];
+        for (int w = 0; w < workers.length; w++) {
+            workers [w] = new Thread (this::work, "morsel-" + w);
+            workers [w].setDaemon (true);
+            workers [w].start ();
+        } // for
+    } // constructor
+
+    /*************************************************************************************
+     * Construct a scheduler with one worker thread per processor.
+     */
+    public MorselScheduler ()
+    {
+        this (Runtime.getRuntime ().availableProcessors ());
+    } // constructor
+
+    /*************************************************************************************
+     * Submit a query: run the pipeline on each morsel of the tuples.
+     * @param tuples    the input tuples
+     * @param pipeline  the operators to run on a morsel, returning its results
+     * @return  a future for the results of all the morsels, in order
+     */
+    public <R> CompletableFuture <List <R>> submit (List <Comparable []> tuples,
+                                                    Function <List <Comparable []>, List <R>> pipeline)
+    {
+        var q = new Query <R> (tuples, pipeline);
+        if (q.nMorsels == 0) {
+            q.result.complete (new ArrayList <> ());
+            return q.result;
+        } // if
+        synchronized (this) {
+            if (shutdown) throw new IllegalStateException ("MorselScheduler: shut down");
+            active.addLast (q);
+            notifyAll ();
+        } // synchronized
+        return q.result;
+    } // submit
+
+    /*************************************************************************************
+     * Stop the workers once the morsels already handed out are done.  Queries still
+     * waiting for morsels are failed.
+     */
+    public void shutdown ()
+    {
+        synchronized (this) {
+            shutdown = true;
+            for (var q : active) q.result.completeExceptionally (new IllegalStateException ("MorselScheduler: shut down"));
+            active.clear ();
+            notifyAll ();
+        } // synchronized
+    } // shutdown
+
+    /*************************************************************************************
+     * The worker loop: take the next morsel round-robin across the active queries and
+     * run the query's pipeline on it.
+     */
+    private void work ()
+    {
+        while (true) {
+            Query <?> q;
+            int m;
+            synchronized (this) {
+                while (active.isEmpty () && ! shutdown) {
+                    try {
+                        wait ();
+                    } catch (InterruptedException ex) {
+                        return;
+                    } // try
+                } // while
+                if (shutdown) return;
+                q = active.pollFirst ();
+                m = q.next++;
+                if (q.next < q.nMorsels) active.addLast (q);       // back of the line
+            } // synchronized
+            q.run (m);
+        } // while
+    } // work
+
+    /*****************************************************************************************
+     * The Query class holds a submitted query: its input, its pipeline, the next morsel to
+     * hand out and the results of the morsels.
+     */
+    private static class Query <R>
+    {
+        final List <Comparable []> tuples;
+        final Function <List <Comparable []>, List <R>> pipeline;
+        final int nMorsels;
+        final List <R> [] parts;
+        final AtomicInteger remaining;
+        final CompletableFuture <List <R>> result = new CompletableFuture <> ();
+        int next = 0;                                                  // guarded by the scheduler
+
+        @SuppressWarnings("unchecked")
+        Query (List <Comparable []> _tuples, Function <List <Comparable []>, List <R>> _pipeline)
+        {
+            tuples    = _tuples;
+            pipeline  = _pipeline;
+            nMorsels  = (tuples.size () + MORSEL - 1) / MORSEL;
+            parts     = (List <R> []) new List [nMorsels];
+            remaining = new AtomicInteger (nMorsels);
+        } // constructor
+
+        void run (int m)
+        {
+            if (result.isDone ()) return;                              // failed already
+            try {
+                parts [m] = pipeline.apply (tuples.subList (m * MORSEL, Math.min ((m + 1) * MORSEL, tuples.size ())));
+                if (remaining.decrementAndGet () == 0) {              // last morsel: concatenate
+                    var size = 0;
+                    for (var part : parts) size += part.size ();
+                    var rows = new ArrayList <R> (size);
+                    for (var part : parts) rows.addAll (part);
+                    result.complete (rows);
+                } // if
+            } catch (Throwable ex) {                                   // Errors too, or the caller waits forever
+                result.completeExceptionally (ex);
+            } // try
+        } // run
+
+    } // Query class
+
+} // MorselScheduler class
@@ -88,12 +88,12 @@ class MovieDB
         studio.insert (studio2);
         studio.print ();
 
-        //movie.save ();
-       // cinema.save ();
-        //movieStar.save ();
-      //  starsIn.save ();
-       // movieExec.save ();
-        //studio.save ();
+        movie.save ();
+        cinema.save ();
+        movieStar.save ();
+        starsIn.save ();
+        movieExec.save ();
+        studio.save ();
 
         movieStar.printIndex ();
 
@@ -172,6 +172,12 @@ class MovieDB
         var t_minus = movie.minus (cinema);
         t_minus.print ();
 
+        //--------------------- intersect: movie INTERSECT cinema
+
+        out.println ();
+        var t_intersect = movie.intersect (cinema);
+        t_intersect.print ();
+
         //--------------------- equi-join: movie JOIN studio ON studioName = name
 
         out.println ();
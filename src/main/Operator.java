@@ -0,0 +1,347 @@
+package main;
+/*****************************************************************************************
+ * @file  Operator.java
+ *
+ * @author   John Miller
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/*****************************************************************************************
+ * The Operator class is the base of pull-based (Volcano style) query plans.  Unlike the
+ * relational algebra operators of Table, which each materialize a new table, operators
+ * are composed into a tree and tuples are pulled through it one at a time:
+ * <pre>
+ *     movie.scan ().select (t -> t [1].equals (1977)).project ("title year").limit (10)
+ *          .toTable ("q")
+ * </pre>
+ * open prepares an operator (and its inputs), next returns the next tuple (or null when
+ * there are no more) and close releases its resources.  Only blocking operators (the
+ * build side of a hash join) hold tuples, so memory is O(pipeline), and a limit stops
+ * pulling from its input as soon as it has enough tuples.
+ */
+public abstract class Operator
+{
+    /** The names of the output attributes
+     */
+    final String [] attribute;
+
+    /** The domains of the output attributes
+     */
+    final Class [] domain;
+
+    /** The key of the output (the input's key when retained, else all the attributes)
+     */
+    final String [] key;
+
+    /*************************************************************************************
+     * Construct an operator with the given output schema.
+     * @param _attribute  the names of the output attributes
+     * @param _domain     the domains of the output attributes
+     * @param _key        the key of the output
+     */
+    Operator (String [] _attribute, Class [] _domain, String [] _key)
+    {
+        attribute = _attribute;
+        domain    = _domain;
+        key       = _key;
+    } // constructor
+
+    /*************************************************************************************
+     * Prepare the operator (and its inputs) to produce tuples.
+     */
+    public abstract void open ();
+
+    /*************************************************************************************
+     * Return the next output tuple.
+     * @return  the next tuple, or null if there are no more
+     */
+    public abstract Comparable [] next ();
+
+    /*************************************************************************************
+     * Release the resources held by the operator (and its inputs).
+     */
+    public abstract void close ();
+
+    /*************************************************************************************
+     * Return an operator keeping the tuples of this one that satisfy the predicate.
+     * @param predicate  the check condition for tuples
+     * @return  the select operator
+     */
+    public Operator select (Predicate <Comparable []> predicate)
+    {
+        return new Select (this, predicate);
+    } // select
+
+    /*************************************************************************************
+     * Return an operator projecting the tuples of this one onto the given attributes.
+     * Duplicates are not eliminated (bag semantics), as that would need to hold all
+     * distinct tuples.
+     * @param attributes  the attributes to project onto
+     * @return  the project operator
+     */
+    public Operator project (String attributes)
+    {
+        return new Project (this, attributes.split (" "));
+    } // project
+
+    /*************************************************************************************
+     * Return an operator equi-joining the tuples of this one with those of op2, by
+     * building a hash table on op2 and probing it with this operator's tuples.
+     * @param attributes1  the join attributes of this operator
+     * @param attributes2  the join attributes of op2
+     * @param op2          the build side of the join
+     * @return  the join operator
+     */
+    public Operator join (String attributes1, String attributes2, Operator op2)
+    {
+        return new HashJoin (this, attributes1.split (" "), attributes2.split (" "), op2);
+    } // join
+
+    /*************************************************************************************
+     * Return an operator passing on at most n tuples of this one.
+     * @param n  the maximum number of tuples
+     * @return  the limit operator
+     */
+    public Operator limit (int n)
+    {
+        return new Limit (this, n);
+    } // limit
+
+    /*************************************************************************************
+     * Run the plan rooted at this operator and materialize its output as a table.
+     * @param name  the name of the result table
+     * @return  the result table
+     */
+    public Table toTable (String name)
+    {
+        var rows = new ArrayList <Comparable []> ();
+        open ();
+        try {
+            for (var t = next (); t != null; t = next ()) rows.add (t);
+        } finally {
+            close ();
+        } // try
+        return new Table (name, attribute, domain, key, rows);
+    } // toTable
+
+    /*************************************************************************************
+     * Return the column position of the given attribute.
+     * @param attr  the attribute name
+     * @return  its column position
+     * @throws IllegalArgumentException  if there is no such attribute
+     */
+    int col (String attr)
+    {
+        for (int j = 0; j < attribute.length; j++) if (attribute [j].equals (attr)) return j;
+        throw new IllegalArgumentException ("Operator: attribute " + attr + " does not exist");
+    } // col
+
+    /*************************************************************************************
+     * Return the column positions of the given attributes.
+     * @param attrs  the attribute names
+     * @return  their column positions
+     */
+    int [] cols (String [] attrs)
+    {
+        var pos = new int [attrs.length];
+        for (int j = 0; j < attrs.length; j++) pos [j] = col (attrs [j]);
+        return pos;
+    } // cols
+
+    /*****************************************************************************************
+     * The Scan class produces the tuples of a table, in storage order.  The number of
+     * tuples is fixed when the scan is opened.
+     */
+    static class Scan extends Operator
+    {
+        private final List <Comparable []> tuples;
+        private int pos, end;
+
+        Scan (String [] _attribute, Class [] _domain, String [] _key, List <Comparable []> _tuples)
+        {
+            super (_attribute, _domain, _key);
+            tuples = _tuples;
+        } // constructor
+
+        public void open ()          { pos = 0; end = tuples.size (); }
+        public Comparable [] next () { return (pos < end) ? tuples.get (pos++) : null; }
+        public void close ()         { pos = end; }
+
+    } // Scan class
+
+    /*****************************************************************************************
+     * The Select class passes on the input tuples that satisfy a predicate.
+     */
+    static class Select extends Operator
+    {
+        private final Operator input;
+        private final Predicate <Comparable []> predicate;
+
+        Select (Operator _input, Predicate <Comparable []> _predicate)
+        {
+            super (_input.attribute, _input.domain, _input.key);
+            input     = _input;
+            predicate = _predicate;
+        } // constructor
+
+        public void open ()  { input.open (); }
+        public void close () { input.close (); }
+
+        public Comparable [] next ()
+        {
+            for (var t = input.next (); t != null; t = input.next ()) if (predicate.test (t)) return t;
+            return null;
+        } // next
+
+    } // Select class
+
+    /*****************************************************************************************
+     * The Project class keeps the given columns of each input tuple.
+     */
+    static class Project extends Operator
+    {
+        private final Operator input;
+        private final int [] cols;
+
+        Project (Operator _input, String [] attrs)
+        {
+            super (attrs, pick (_input.domain, _input.cols (attrs)),
+                   Arrays.asList (attrs).containsAll (Arrays.asList (_input.key)) ? _input.key : attrs);
+            input = _input;
+            cols  = _input.cols (attrs);
+        } // constructor
+
+        public void open ()  { input.open (); }
+        public void close () { input.close (); }
+
+        public Comparable [] next ()
+        {
+            var t = input.next ();
+            if (t == null) return null;
+            var tup = new Comparable [cols.length];
+            for (int j = 0; j < cols.length; j++) tup [j] = t [cols [j]];
+            return tup;
+        } // next
+
+        private static Class [] pick (Class [] domain, int [] cols)
+        {
+            var dom = new Class [cols.length];
+            for (int j = 0; j < cols.length; j++) dom [j] = domain [cols [j]];
+            return dom;
+        } // pick
+
+    } // Project class
+
+    /*****************************************************************************************
+     * The HashJoin class equi-joins its probe input (left) with its build input (right).
+     * open reads the whole build input into a hash table on the join attributes; next then
+     * streams the probe input, returning each probe tuple concatenated with each matching
+     * build tuple.  As in Table.join, duplicate attribute names from the right get a "2".
+     */
+    static class HashJoin extends Operator
+    {
+        private final Operator probe, build;
+        private final int [] probeCols, buildCols;
+        private Map <KeyType, List <Comparable []>> table;
+        private Comparable [] current;
+        private List <Comparable []> matches;
+        private int m;
+
+        HashJoin (Operator _probe, String [] attrs1, String [] attrs2, Operator _build)
+        {
+            super (joinAttributes (_probe.attribute, _build.attribute),
+                   ArrayUtil.concat (_probe.domain, _build.domain), _probe.key);
+            if (attrs1.length != attrs2.length)
+                throw new IllegalArgumentException ("HashJoin: join attribute lists differ in length");
+            probe     = _probe;
+            build     = _build;
+            probeCols = _probe.cols (attrs1);
+            buildCols = _build.cols (attrs2);
+        } // constructor
+
+        public void open ()
+        {
+            table = new HashMap <> ();
+            build.open ();
+            try {
+                for (var t = build.next (); t != null; t = build.next ())
+                    table.computeIfAbsent (keyOf (t, buildCols), k -> new ArrayList <> ()).add (t);
+            } finally {
+                build.close ();
+            } // try
+            probe.open ();
+            matches = null;
+        } // open
+
+        public Comparable [] next ()
+        {
+            while (matches == null || m == matches.size ()) {
+                current = probe.next ();
+                if (current == null) return null;
+                matches = table.get (keyOf (current, probeCols));
+                m = 0;
+            } // while
+            return ArrayUtil.concat (current, matches.get (m++));
+        } // next
+
+        public void close ()
+        {
+            probe.close ();
+            table = null;
+        } // close
+
+        private static KeyType keyOf (Comparable [] t, int [] cols)
+        {
+            var k = new Comparable [cols.length];
+            for (int j = 0; j < cols.length; j++) k [j] = t [cols [j]];
+            return new KeyType (k);
+        } // keyOf
+
+        private static String [] joinAttributes (String [] attrs1, String [] attrs2)
+        {
+            var attrs = ArrayUtil.concat (attrs1, attrs2);
+            for (int j = 0; j < attrs2.length; j++) {
+                if (Arrays.asList (attrs1).contains (attrs2 [j])) attrs [attrs1.length + j] = attrs2 [j] + "2";
+            } // for
+            return attrs;
+        } // joinAttributes
+
+    } // HashJoin class
+
+    /*****************************************************************************************
+     * The Limit class passes on at most n input tuples, and stops pulling from its input
+     * once it has.
+     */
+    static class Limit extends Operator
+    {
+        private final Operator input;
+        private final int n;
+        private int returned;
+
+        Limit (Operator _input, int _n)
+        {
+            super (_input.attribute, _input.domain, _input.key);
+            input = _input;
+            n     = _n;
+        } // constructor
+
+        public void open ()  { input.open (); returned = 0; }
+
+        public Comparable [] next ()
+        {
+            if (returned >= n) return null;                          // a negative n gives no tuples, like Table.limit
+            returned++;
+            return input.next ();
+        } // next
+
+        public void close () { input.close (); }
+
+    } // Limit class
+
+} // Operator class
@@ -0,0 +1,388 @@
+package main;
+/*****************************************************************************************
+ * @file  Optimizer.java
+ *
+ * @author   John Miller
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/*****************************************************************************************
+ * The Optimizer class rewrites a select-project-join LogicalPlan into an equivalent plan
+ * that is cheaper to execute:
+ * <ol>
+ *   <li> the joins are flattened into a list of base relations and equality predicates,
+ *        and every selection is pushed down onto the relation it is about;
+ *   <li> each base relation is projected onto the attributes used above it (keeping its
+ *        key, so no tuples are merged);
+ *   <li> the join order is chosen by dynamic programming over left-deep trees (greedily
+ *        for many relations), minimizing the sum of the estimated intermediate result
+ *        sizes plus the cost of the join method chosen for each join: nested loop, index
+ *        (when joining on the whole key of an unfiltered base table) or hash;
+ *   <li> the columns are put back into the order and names of the original plan.
+ * </ol>
+ * Cardinalities are estimated from table sizes and column statistics (see ColumnStats):
+ * selections from the histograms and distinct counts, and joins assuming each value of
+ * the column with fewer distinct values matches (containment).
+ */
+class Optimizer
+{
+    /** The largest number of relations whose join order is found by dynamic programming
+     */
+    private static final int MAX_DP = 12;
+
+    /** The cost per tuple of probing an index, relative to a hash probe
+     */
+    static final double INDEX_PROBE = 1.5;
+
+    /** The cost per tuple of building a hash table or an index, relative to a probe
+     */
+    static final double BUILD = 2.0;
+
+    /** The base relations (scans), in the order they appear in the plan
+     */
+    private final List <LogicalPlan.Scan> leaves = new ArrayList <> ();
+
+    /** The selections pushed down onto each base relation
+     */
+    private final List <List <LogicalPlan.Select>> selections = new ArrayList <> ();
+
+    /** The join predicates, as pairs of equal columns
+     */
+    private final List <Col []> equalities = new ArrayList <> ();
+
+    /** The estimated number of tuples of each base relation after its selections
+     */
+    private double [] card;
+
+    /** The access plan (scan, selections, projection) of each base relation
+     */
+    private LogicalPlan [] access;
+
+    /*************************************************************************************
+     * Return an optimized plan equivalent to the given one.  Plans without joins are
+     * returned unchanged.
+     * @param plan  the plan to optimize
+     * @return  the optimized plan
+     */
+    LogicalPlan optimize (LogicalPlan plan)
+    {
+        String [] outAttrs = null;
+        var body = plan;
+        if (body instanceof LogicalPlan.Project) {
+            outAttrs = ((LogicalPlan.Project) body).attrs;
+            body     = ((LogicalPlan.Project) body).input;
+        } // if
+        if (! hasJoin (body)) return plan;
+
+        var schema = flatten (body);
+        var names  = body.attributes ();
+        var outCols = new ArrayList <Col> ();
+        if (outAttrs == null) outCols.addAll (schema);
+        else for (var a : outAttrs) outCols.add (schema.get (LogicalPlan.position (names, a)));
+
+        var needed = new HashSet <Col> (outCols);
+        for (var eq : equalities) needed.addAll (Arrays.asList (eq));
+        var n  = leaves.size ();
+        card   = new double [n];
+        access = new LogicalPlan [n];
+        for (int r = 0; r < n; r++) access [r] = accessPlan (r, needed);
+
+        var best = (n <= MAX_DP) ? dynamicProgramming () : greedy ();
+        if (best == null) return plan;                                  // no connected order
+
+        var cols = new int [outCols.size ()];
+        for (int k = 0; k < cols.length; k++) cols [k] = best.cols.indexOf (outCols.get (k));
+        var top = new LogicalPlan.Arrange (best.plan, cols, (outAttrs != null) ? outAttrs : names,
+                                           leaves.get (0).table.getKey ());
+        top.estimate = best.card;
+        return top;
+    } // optimize
+
+    /*************************************************************************************
+     * Flatten the joins and selections of the plan into base relations, selections and
+     * equalities, returning the plan's columns.  Subplans that are neither joins nor
+     * selections become base relations (executed first when not a scan).
+     * @param plan  the plan to flatten
+     * @return  the columns produced by the plan, in order
+     */
+    private List <Col> flatten (LogicalPlan plan)
+    {
+        if (plan instanceof LogicalPlan.Join) {
+            var join = (LogicalPlan.Join) plan;
+            var lcols = flatten (join.left);
+            var rcols = flatten (join.right);
+            for (int j = 0; j < join.attrs1.length; j++) {
+                equalities.add (new Col [] { lcols.get (LogicalPlan.position (join.left.attributes (), join.attrs1 [j])),
+                                             rcols.get (LogicalPlan.position (join.right.attributes (), join.attrs2 [j])) });
+            } // for
+            var cols = new ArrayList <> (lcols);
+            cols.addAll (rcols);
+            return cols;
+        } // if
+
+        if (plan instanceof LogicalPlan.Select) {
+            var sel  = (LogicalPlan.Select) plan;
+            var cols = flatten (sel.input);
+            var col  = cols.get (LogicalPlan.position (sel.input.attributes (), sel.attr));
+            var leaf = leaves.get (col.leaf);
+            selections.get (col.leaf).add (new LogicalPlan.Select (leaf, col.attr, ColumnBatch.OPS [sel.op], sel.value));
+            return cols;
+        } // if
+
+        var scan = new LogicalPlan.Scan ((plan instanceof LogicalPlan.Scan) ? ((LogicalPlan.Scan) plan).table
+                                                                            : plan.execute ());
+        var r = leaves.size ();
+        leaves.add (scan);
+        selections.add (new ArrayList <> ());
+        var cols = new ArrayList <Col> ();
+        for (var a : scan.attributes ()) cols.add (new Col (r, a));
+        return cols;
+    } // flatten
+
+    /*************************************************************************************
+     * Build the access plan for base relation r: its scan, its selections and, when
+     * some of its attributes are not needed, a projection onto the needed ones and the
+     * key.  Also estimates its cardinality.
+     * @param r       the base relation
+     * @param needed  the columns needed above the base relations
+     * @return  the access plan
+     */
+    private LogicalPlan accessPlan (int r, Set <Col> needed)
+    {
+        var table = leaves.get (r).table;
+        LogicalPlan plan = leaves.get (r);
+        plan.estimate = card [r] = table.size ();
+        for (var s : selections.get (r)) {
+            card [r] *= selectivity (table, s.attr, s.op, s.value);
+            plan = new LogicalPlan.Select (plan, s.attr, ColumnBatch.OPS [s.op], s.value);
+            plan.estimate = card [r];
+        } // for
+
+        var keep = new ArrayList <String> ();
+        var key  = Arrays.asList (table.getKey ());
+        for (var a : table.getAttributes ()) if (key.contains (a) || needed.contains (new Col (r, a))) keep.add (a);
+        if (keep.size () < table.getAttributes ().length) {
+            plan = new LogicalPlan.Project (plan, keep.toArray (new String [0]));
+            plan.estimate = card [r];
+        } // if
+        return plan;
+    } // accessPlan
+
+    /*************************************************************************************
+     * Find the cheapest left-deep join order by dynamic programming over the subsets of
+     * base relations, extending each subset's best plan by one more relation joined with
+     * at least one equality.
+     * @return  the best plan joining all the relations, or null if there is none
+     */
+    private Entry dynamicProgramming ()
+    {
+        var n    = leaves.size ();
+        var best = new Entry [1 << n];
+        for (int r = 0; r < n; r++) best [1 << r] = new Entry (card [r], card [r], access [r], columns (r, access [r]));
+
+        for (int s = 1; s < best.length; s++) {                        // subsets come after their own subsets
+            if (best [s] == null) continue;
+            for (int r = 0; r < n; r++) {
+                if ((s & (1 << r)) != 0) continue;
+                var e = extend (best [s], BitSet.valueOf (new long [] { s }), r);
+                var t = s | (1 << r);
+                if (e != null && (best [t] == null || e.cost < best [t].cost)) best [t] = e;
+            } // for
+        } // for
+        return best [best.length - 1];
+    } // dynamicProgramming
+
+    /*************************************************************************************
+     * Find a join order greedily: start with the smallest relation and repeatedly join
+     * the relation that is cheapest to add.
+     * @return  the plan joining all the relations, or null if they are not connected
+     */
+    private Entry greedy ()
+    {
+        var n = leaves.size ();
+        var first = 0;
+        for (int r = 1; r < n; r++) if (card [r] < card [first]) first = r;
+        var e    = new Entry (card [first], card [first], access [first], columns (first, access [first]));
+        var s = new BitSet ();
+        s.set (first);
+
+        for (int k = 1; k < n; k++) {
+            Entry next = null;
+            var   pick = -1;
+            for (int r = 0; r < n; r++) {
+                if (s.get (r)) continue;
+                var c = extend (e, s, r);
+                if (c != null && (next == null || c.cost < next.cost)) { next = c; pick = r; }
+            } // for
+            if (next == null) return null;
+            e = next;
+            s.set (pick);
+        } // for
+        return e;
+    } // greedy
+
+    /*************************************************************************************
+     * Join base relation r to the plan for the subset s of the relations, choosing the
+     * cheapest join method.
+     * @param e  the plan for the subset
+     * @param s  the subset (bit r set for relation r)
+     * @param r  the relation to add
+     * @return  the extended plan, or null if no equality connects r to the subset
+     */
+    private Entry extend (Entry e, BitSet s, int r)
+    {
+        var sNames = new ArrayList <String> ();
+        var rNames = new ArrayList <String> ();
+        var sAttrs = e.plan.attributes ();
+        var sel    = 1.0;
+        for (var eq : equalities) {
+            Col cs, cr;
+            if (eq [0].leaf == r && s.get (eq [1].leaf))      { cr = eq [0]; cs = eq [1]; }
+            else if (eq [1].leaf == r && s.get (eq [0].leaf)) { cr = eq [1]; cs = eq [0]; }
+            else continue;
+            sNames.add (sAttrs [e.cols.indexOf (cs)]);
+            rNames.add (cr.attr);
+            sel /= Math.max (distinct (cs), distinct (cr));
+        } // for
+        if (rNames.isEmpty ()) return null;                             // avoid cross products
+
+        var out   = e.card * card [r] * sel;
+        var table = leaves.get (r).table;
+        var nl    = e.card * card [r];
+        var hash  = e.card + BUILD * card [r];
+        var index = Double.MAX_VALUE;
+        var key   = table.getKey ();
+        if (selections.get (r).isEmpty () && rNames.size () == key.length
+                                          && new HashSet <> (rNames).equals (new HashSet <> (Arrays.asList (key)))) {
+            index = INDEX_PROBE * e.card + (table.isIndexed () ? 0 : BUILD * table.size ());
+        } // if
+
+        LogicalPlan.Join plan;
+        List <Col> cols;
+        double cost;
+        if (index <= hash && index <= nl) {                             // probe r's key index with e
+            var sOrdered = new String [key.length];
+            for (int j = 0; j < key.length; j++) sOrdered [j] = sNames.get (rNames.indexOf (key [j]));
+            var scan = leaves.get (r);
+            plan = new LogicalPlan.Join (scan, e.plan, key, sOrdered, LogicalPlan.JoinMethod.INDEX);
+            cols = columns (r, scan);
+            cols.addAll (e.cols);
+            cost = index;
+        } else {
+            var method = (nl < hash) ? LogicalPlan.JoinMethod.NESTED_LOOP : LogicalPlan.JoinMethod.HASH;
+            plan = new LogicalPlan.Join (e.plan, access [r], sNames.toArray (new String [0]),
+                                         rNames.toArray (new String [0]), method);
+            cols = new ArrayList <> (e.cols);
+            cols.addAll (columns (r, access [r]));
+            cost = Math.min (nl, hash);
+        } // if
+        plan.estimate = out;
+        return new Entry (out, e.cost + cost + out, plan, cols);
+    } // extend
+
+    /*************************************************************************************
+     * Estimate the fraction of the table's tuples satisfying "attr op value" from the
+     * column's statistics.
+     * @param table  the table
+     * @param attr   the attribute compared
+     * @param op     the comparison operator
+     * @param value  the value compared with
+     * @return  the estimated selectivity
+     */
+    double selectivity (Table table, String attr, int op, Comparable value)
+    {
+        return table.statistics (attr).selectivity (op, value);
+    } // selectivity
+
+    /*************************************************************************************
+     * Estimate the number of distinct values of the table's attribute (exact for a
+     * single attribute key, else from the column's statistics).
+     * @param table  the table
+     * @param attr   the attribute
+     * @return  the estimated number of distinct values (at least 1)
+     */
+    double distinct (Table table, String attr)
+    {
+        if (Arrays.equals (table.getKey (), new String [] { attr })) return Math.max (1, table.size ());
+        return table.statistics (attr).distinct ();
+    } // distinct
+
+    /*************************************************************************************
+     * Estimate the number of distinct values of a column after its relation's selections.
+     * @param c  the column
+     * @return  the estimated number of distinct values
+     */
+    private double distinct (Col c)
+    {
+        return Math.max (1, Math.min (distinct (leaves.get (c.leaf).table, c.attr), card [c.leaf]));
+    } // distinct
+
+    /*************************************************************************************
+     * Return the columns produced by the given plan over base relation r.
+     * @param r     the base relation
+     * @param plan  its (access) plan
+     * @return  the columns
+     */
+    private static List <Col> columns (int r, LogicalPlan plan)
+    {
+        var cols = new ArrayList <Col> ();
+        for (var a : plan.attributes ()) cols.add (new Col (r, a));
+        return cols;
+    } // columns
+
+    /*************************************************************************************
+     * Determine whether the plan contains a join.
+     * @param plan  the plan
+     * @return  whether it has a join node
+     */
+    private static boolean hasJoin (LogicalPlan plan)
+    {
+        if (plan instanceof LogicalPlan.Join) return true;
+        for (var input : plan.inputs ()) if (hasJoin (input)) return true;
+        return false;
+    } // hasJoin
+
+    /*****************************************************************************************
+     * The Col class identifies a column by its base relation and attribute name there.
+     */
+    private static class Col
+    {
+        final int leaf;
+        final String attr;
+
+        Col (int _leaf, String _attr) { leaf = _leaf; attr = _attr; }
+
+        public boolean equals (Object o)
+        {
+            return o instanceof Col && ((Col) o).leaf == leaf && ((Col) o).attr.equals (attr);
+        } // equals
+
+        public int hashCode () { return Objects.hash (leaf, attr); }
+
+    } // Col class
+
+    /*****************************************************************************************
+     * The Entry class holds a candidate plan with its estimated cardinality and cost and
+     * the columns it produces.
+     */
+    private static class Entry
+    {
+        final double card, cost;
+        final LogicalPlan plan;
+        final List <Col> cols;
+
+        Entry (double _card, double _cost, LogicalPlan _plan, List <Col> _cols)
+        {
+            card = _card; cost = _cost; plan = _plan; cols = _cols;
+        } // constructor
+
+    } // Entry class
+
+} // Optimizer class
@@ -0,0 +1,488 @@
+package main;
+/*****************************************************************************************
+ * @file  Pipeline.java
+ *
+ * @author   John Miller
+ */
+
+import java.lang.invoke.MethodHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/*****************************************************************************************
+ * The Pipeline class executes a LogicalPlan with its scan, select, project and join
+ * probe operators fused into a single loop over a driving table (see
+ * LogicalPlan.executeFused).  The plan's left spine (its right spine for index joins)
+ * is streamed:
+ * <ul>
+ *   <li> the driving table is the leftmost base table (or the first subplan on the spine
+ *        that has to be materialized, e.g., a projection eliminating duplicates);
+ *   <li> each join above it is a probe stage: the other input is put in a hash table
+ *        (read straight from its base table when it only selects and projects, else
+ *        materialized with its own pipeline), or looked up in its key index;
+ *   <li> selections become compiled predicates (see QueryCompiler) on the input they
+ *        are about, applied while building its hash table or when its tuple is bound,
+ *        and projections just remap columns.
+ * </ul>
+ * The intermediate results are never formed: the tuple each input contributes to the
+ * current result is kept in a slot (the pipeline's locals), and only the final result
+ * tuples are allocated (plus a KeyType per key index lookup).
+ */
+class Pipeline
+{
+    /** The name of the driving input
+     */
+    private String driverName;
+
+    /** The tuples of each part (input contributing a tuple to a result), by part;
+     *  part 0 is the driving input
+     */
+    private final List <List <Comparable []>> sources = new ArrayList <> ();
+
+    /** The domains of each part's columns, by part
+     */
+    private final List <Class []> domains = new ArrayList <> ();
+
+    /** The compiled selection on each part (null for none), by part
+     */
+    private final List <MethodHandle> filters = new ArrayList <> ();
+
+    /** The probe stages, in the order they are applied
+     */
+    private final List <Stage> stages = new ArrayList <> ();
+
+    /** The tuple currently bound for each part
+     */
+    private Comparable [][] slots;
+
+    /** The part and column of each result column
+     */
+    private int [] outPart, outCol;
+
+    /** The result tuples
+     */
+    private final List <Comparable []> rows = new ArrayList <> ();
+
+    /** The result tuples seen so far, when duplicates are to be eliminated (else null)
+     */
+    private HashSet <KeyType> seen;
+
+    /*************************************************************************************
+     * Run the plan as a pipeline.
+     * @param plan  the plan to execute
+     * @return  the table produced by the plan
+     */
+    Table run (LogicalPlan plan)
+    {
+        Flow f;
+        int [] cols;
+        String [] names, key;
+        var distinct = false;
+        if (plan instanceof LogicalPlan.Project) {                       // final projection may eliminate duplicates
+            var p = (LogicalPlan.Project) plan;
+            f     = compile (p.input);
+            cols  = positions (f.names, p.attrs);
+            names = p.attrs;
+            distinct = ! Arrays.asList (names).containsAll (Arrays.asList (f.key));
+            key   = distinct ? names : f.key;
+        } else if (plan instanceof LogicalPlan.Arrange) {
+            var a = (LogicalPlan.Arrange) plan;
+            f     = compile (a.input);
+            cols  = a.cols;
+            names = a.names;
+            distinct = ! Arrays.asList (names).containsAll (Arrays.asList (a.key));
+            key   = distinct ? names : a.key;
+        } else {
+            f     = compile (plan);
+            cols  = new int [f.names.length];
+            for (int j = 0; j < cols.length; j++) cols [j] = j;
+            names = f.names;
+            key   = f.key;
+        } // if
+
+        outPart = new int [cols.length];
+        outCol  = new int [cols.length];
+        var domain = new Class [cols.length];
+        for (int j = 0; j < cols.length; j++) {
+            outPart [j] = f.part [cols [j]];
+            outCol [j]  = f.col [cols [j]];
+            domain [j]  = f.domain [cols [j]];
+        } // for
+        seen = distinct ? new HashSet <> () : null;
+
+        for (var st : stages) st.build (sources.get (st.part), filters.get (st.part));
+        slots = new Comparable [domains.size ()][];
+        var filter = filters.get (0);
+        for (var t : sources.get (0)) {
+            if (filter != null && ! QueryCompiler.test (filter, t)) continue;
+            slots [0] = t;
+            push (0);
+        } // for
+        return new Table (driverName + "_fused", names, domain, key, rows);
+    } // run
+
+    /*************************************************************************************
+     * Compile the plan on the streamed spine into the stages and filters of the pipeline.
+     * @param plan  the plan
+     * @return  where its attributes are found
+     */
+    private Flow compile (LogicalPlan plan)
+    {
+        if (plan instanceof LogicalPlan.Scan) return drive (((LogicalPlan.Scan) plan).table);
+
+        if (plan instanceof LogicalPlan.Select) {
+            var s = (LogicalPlan.Select) plan;
+            if (s.input instanceof LogicalPlan.Scan && s.op == ColumnBatch.EQ) {   // key lookup: drive with the match
+                var table = ((LogicalPlan.Scan) s.input).table;
+                if (Arrays.equals (table.getKey (), new String [] { s.attr })) return drive (table.select (new KeyType (s.value)));
+            } // if
+            var f = compile (s.input);
+            filter (f, s);
+            return f;
+        } // if
+
+        if (plan instanceof LogicalPlan.Project) {
+            var p = (LogicalPlan.Project) plan;
+            if (! Arrays.asList (p.attrs).containsAll (Arrays.asList (key (p.input)))) return drive (plan.execute ());
+            var f = compile (p.input);
+            return f.pick (positions (f.names, p.attrs), p.attrs, f.key);
+        } // if
+
+        if (plan instanceof LogicalPlan.Arrange) {
+            var a = (LogicalPlan.Arrange) plan;
+            if (! Arrays.asList (a.names).containsAll (Arrays.asList (a.key))) return drive (plan.execute ());
+            return compile (a.input).pick (a.cols, a.names, a.key);
+        } // if
+
+        if (plan instanceof LogicalPlan.Join) {
+            var jn = (LogicalPlan.Join) plan;
+            if (jn.method == LogicalPlan.JoinMethod.INDEX && jn.left instanceof LogicalPlan.Scan) {
+                var f     = compile (jn.right);                          // stream the right, look up the left
+                var table = ((LogicalPlan.Scan) jn.left).table;
+                var probe = positions (f.names, jn.attrs2);
+                var part  = addPart (table);
+                var index = table.uniqueIndex ();
+                if (index != null && jn.attrs1.length == table.getKey ().length
+                                  && Arrays.asList (jn.attrs1).containsAll (Arrays.asList (table.getKey ()))) {
+                    var inKeyOrder = new int [probe.length];
+                    var key = table.getKey ();
+                    for (int k = 0; k < key.length; k++) inKeyOrder [k] = probe [Arrays.asList (jn.attrs1).indexOf (key [k])];
+                    stages.add (new Stage (f.part, f.col, inKeyOrder, part, index));
+                } else {
+                    stages.add (new Stage (f.part, f.col, probe, part, positions (table.getAttributes (), jn.attrs1)));
+                } // if
+                return Flow.of (part, table).join (f, jn.attributes (), table.getKey ());
+            } // if
+
+            var f = compile (jn.left);                                   // stream the left, build on the right
+            var g = attach (jn.right);
+            if (g == null) {
+                var right = jn.right.executeFused ();
+                g = Flow.of (addPart (right), right);
+            } // if
+            var build = positions (g.names, jn.attrs2);
+            for (int k = 0; k < build.length; k++) build [k] = g.col [build [k]];
+            stages.add (new Stage (f.part, f.col, positions (f.names, jn.attrs1), g.part [0], build));
+            return f.join (g, jn.attributes (), f.key);
+        } // if
+
+        return drive (plan.execute ());                                  // anything else: materialize it
+    } // compile
+
+    /*************************************************************************************
+     * Make the given table the driving input (part 0).
+     * @param table  the table whose tuples are streamed
+     * @return  where its attributes are found
+     */
+    private Flow drive (Table table)
+    {
+        driverName = table.getName ();
+        return Flow.of (addPart (table), table);
+    } // drive
+
+    /*************************************************************************************
+     * Attach a join's build input as a new part without materializing it, if it is a
+     * chain of selections and key preserving projections over a base table: the
+     * table's tuples are built on and the selections filter the build.
+     * @param plan  the build input
+     * @return  where its attributes are found, or null if it must be materialized
+     */
+    private Flow attach (LogicalPlan plan)
+    {
+        if (plan instanceof LogicalPlan.Scan) {
+            var table = ((LogicalPlan.Scan) plan).table;
+            return Flow.of (addPart (table), table);
+        } // if
+        if (plan instanceof LogicalPlan.Select) {
+            var s = (LogicalPlan.Select) plan;
+            var f = attach (s.input);
+            if (f != null) filter (f, s);
+            return f;
+        } // if
+        if (plan instanceof LogicalPlan.Project) {
+            var p = (LogicalPlan.Project) plan;
+            if (! Arrays.asList (p.attrs).containsAll (Arrays.asList (key (p.input)))) return null;
+            var f = attach (p.input);
+            return (f == null) ? null : f.pick (positions (f.names, p.attrs), p.attrs, f.key);
+        } // if
+        return null;
+    } // attach
+
+    /*************************************************************************************
+     * Add the compiled selection to the filter of the part its attribute comes from.
+     * @param f  where the selection's input attributes are found
+     * @param s  the selection
+     */
+    private void filter (Flow f, LogicalPlan.Select s)
+    {
+        var j    = LogicalPlan.position (f.names, s.attr);
+        var part = f.part [j];
+        var p    = QueryCompiler.predicate (domains.get (part), f.col [j], s.op, s.value);
+        filters.set (part, (filters.get (part) == null) ? p : QueryCompiler.and (filters.get (part), p));
+    } // filter
+
+    /*************************************************************************************
+     * Add a part to the pipeline.
+     * @param table  the table supplying its tuples
+     * @return  the part number
+     */
+    private int addPart (Table table)
+    {
+        sources.add (table.getTuples ());
+        domains.add (table.getDomain ());
+        filters.add (null);
+        return domains.size () - 1;
+    } // addPart
+
+    /*************************************************************************************
+     * Apply the probe stages from stage s on, with the tuples bound so far.
+     * @param s  the stage to apply next
+     */
+    private void push (int s)
+    {
+        if (s == stages.size ()) { emit (); return; }
+        var st = stages.get (s);
+        if (st.index != null) {                                          // key index lookup
+            var k = st.probeKey (slots);
+            var match = (k == null) ? null : st.index.get (k);
+            if (match == null) return;
+            var filter = filters.get (st.part);
+            if (filter != null && ! QueryCompiler.test (filter, match)) return;
+            slots [st.part] = match;
+            push (s + 1);
+        } else {                                                         // hash table probe
+            var h = st.probeHash (slots);
+            if (h == 0) return;                                          // null join value
+            for (var i = st.head [h & st.mask] - 1; i >= 0; i = st.next [i] - 1) {
+                if (st.hash [i] != h || ! st.matches (slots, st.rows [i])) continue;
+                slots [st.part] = st.rows [i];
+                push (s + 1);
+            } // for
+        } // if
+    } // push
+
+    /*************************************************************************************
+     * Form the result tuple from the bound tuples and add it to the result.
+     */
+    private void emit ()
+    {
+        var t = new Comparable [outPart.length];
+        for (int j = 0; j < t.length; j++) t [j] = slots [outPart [j]][outCol [j]];
+        if (seen == null || seen.add (new KeyType (t))) rows.add (t);
+    } // emit
+
+    /*************************************************************************************
+     * Return the key (attribute names) of the table a plan produces, following the rules
+     * of the Table operators: selections keep their input's key, joins the left input's
+     * and projections their input's if they keep it, else all their attributes.
+     * @param plan  the plan
+     * @return  the key of its result
+     */
+    static String [] key (LogicalPlan plan)
+    {
+        if (plan instanceof LogicalPlan.Scan)   return ((LogicalPlan.Scan) plan).table.getKey ();
+        if (plan instanceof LogicalPlan.Select) return key (((LogicalPlan.Select) plan).input);
+        if (plan instanceof LogicalPlan.Join)   return key (((LogicalPlan.Join) plan).left);
+        if (plan instanceof LogicalPlan.Project) {
+            var p  = (LogicalPlan.Project) plan;
+            var in = key (p.input);
+            return Arrays.asList (p.attrs).containsAll (Arrays.asList (in)) ? in : p.attrs;
+        } // if
+        var a = (LogicalPlan.Arrange) plan;
+        return Arrays.asList (a.names).containsAll (Arrays.asList (a.key)) ? a.key : a.names;
+    } // key
+
+    /*************************************************************************************
+     * Return the positions of the given attributes among the names.
+     * @param names  the attribute names
+     * @param attrs  the attributes to find
+     * @return  their positions
+     */
+    private static int [] positions (String [] names, String [] attrs)
+    {
+        var cols = new int [attrs.length];
+        for (int j = 0; j < attrs.length; j++) cols [j] = LogicalPlan.position (names, attrs [j]);
+        return cols;
+    } // positions
+
+    /*****************************************************************************************
+     * The Flow class tells where each attribute of a streamed plan's result is found: in
+     * which part's bound tuple and at which column.
+     */
+    private static class Flow
+    {
+        final int [] part, col;
+        final String [] names, key;
+        final Class [] domain;
+
+        Flow (int [] _part, int [] _col, String [] _names, String [] _key, Class [] _domain)
+        {
+            part   = _part;
+            col    = _col;
+            names  = _names;
+            key    = _key;
+            domain = _domain;
+        } // constructor
+
+        static Flow of (int p, Table table)
+        {
+            var n    = table.getAttributes ().length;
+            var part = new int [n];
+            var col  = new int [n];
+            for (int j = 0; j < n; j++) { part [j] = p; col [j] = j; }
+            return new Flow (part, col, table.getAttributes (), table.getKey (), table.getDomain ());
+        } // of
+
+        Flow pick (int [] cols, String [] _names, String [] _key)
+        {
+            var p = new int [cols.length];
+            var c = new int [cols.length];
+            var d = new Class [cols.length];
+            for (int j = 0; j < cols.length; j++) { p [j] = part [cols [j]]; c [j] = col [cols [j]]; d [j] = domain [cols [j]]; }
+            return new Flow (p, c, _names, _key, d);
+        } // pick
+
+        Flow join (Flow right, String [] _names, String [] _key)
+        {
+            return new Flow (concat (part, right.part), concat (col, right.col), _names, _key,
+                             ArrayUtil.concat (domain, right.domain));
+        } // join
+
+        private static int [] concat (int [] a, int [] b)
+        {
+            var c = Arrays.copyOf (a, a.length + b.length);
+            System.arraycopy (b, 0, c, a.length, b.length);
+            return c;
+        } // concat
+
+    } // Flow class
+
+    /*****************************************************************************************
+     * The Stage class probes one join's other input with the join columns of the tuples
+     * bound so far, binding each match to its part: either through the input's key index
+     * or through a chained hash table built on the input.  The hash table is made of int
+     * arrays over the build tuples and compares the join columns in place, so neither
+     * building nor probing it allocates key objects.
+     */
+    private static class Stage
+    {
+        final int [] probePart, probeCol;                              // where the probe values are
+        final int part;                                                // the part bound
+        final int [] buildCols;                                        // hash join: the build columns
+        final Map <KeyType, Comparable []> index;                      // index join: the key index
+        Comparable [][] rows;                                          // the build tuples
+        int [] hash;                                                   // their hashes
+        int [] head, next;                                             // chains: 1 + row, 0 ends
+        int mask;
+
+        Stage (int [] fPart, int [] fCol, int [] probe, int _part, int [] _buildCols)
+        {
+            this (fPart, fCol, probe, _part, _buildCols, null);
+        } // constructor
+
+        Stage (int [] fPart, int [] fCol, int [] probe, int _part, Map <KeyType, Comparable []> _index)
+        {
+            this (fPart, fCol, probe, _part, null, _index);
+        } // constructor
+
+        private Stage (int [] fPart, int [] fCol, int [] probe, int _part, int [] _buildCols,
+                       Map <KeyType, Comparable []> _index)
+        {
+            probePart = new int [probe.length];
+            probeCol  = new int [probe.length];
+            for (int k = 0; k < probe.length; k++) { probePart [k] = fPart [probe [k]]; probeCol [k] = fCol [probe [k]]; }
+            part      = _part;
+            buildCols = _buildCols;
+            index     = _index;
+        } // constructor
+
+        void build (List <Comparable []> input, MethodHandle filter)
+        {
+            if (index != null) return;
+            var kept = new ArrayList <Comparable []> ();
+            for (var t : input) {
+                if ((filter == null || QueryCompiler.test (filter, t)) && hashOf (t) != 0) kept.add (t);
+            } // for
+            rows = kept.toArray (new Comparable [kept.size ()][]);
+            hash = new int [rows.length];
+            next = new int [rows.length];
+            head = new int [Integer.highestOneBit (Math.max (2, 2 * rows.length - 1)) << 1];
+            mask = head.length - 1;
+            for (int i = rows.length - 1; i >= 0; i--) {                 // backwards, so chains are in input order
+                hash [i] = hashOf (rows [i]);
+                next [i] = head [hash [i] & mask];
+                head [hash [i] & mask] = i + 1;
+            } // for
+        } // build
+
+        int hashOf (Comparable [] t)
+        {
+            var h = 0;
+            for (var c : buildCols) {
+                if (t [c] == null) return 0;
+                h = 7 * h + t [c].hashCode ();
+            } // for
+            return spread (h);
+        } // hashOf
+
+        int probeHash (Comparable [][] slots)
+        {
+            var h = 0;
+            for (int k = 0; k < probePart.length; k++) {
+                var v = slots [probePart [k]][probeCol [k]];
+                if (v == null) return 0;
+                h = 7 * h + v.hashCode ();
+            } // for
+            return spread (h);
+        } // probeHash
+
+        boolean matches (Comparable [][] slots, Comparable [] t)
+        {
+            for (int k = 0; k < probePart.length; k++) {
+                if (! slots [probePart [k]][probeCol [k]].equals (t [buildCols [k]])) return false;
+            } // for
+            return true;
+        } // matches
+
+        KeyType probeKey (Comparable [][] slots)
+        {
+            var v = new Comparable [probePart.length];
+            for (int j = 0; j < v.length; j++) {
+                v [j] = slots [probePart [j]][probeCol [j]];
+                if (v [j] == null) return null;
+            } // for
+            return new KeyType (v);
+        } // probeKey
+
+        private static int spread (int h)                              // mixed, and never 0 (0 means null)
+        {
+            var z = (int) BloomFilter.mix (h);
+            return (z == 0) ? 1 : z;
+        } // spread
+
+    } // Stage class
+
+} // Pipeline class
@@ -0,0 +1,250 @@
+package main;
+/*****************************************************************************************
+ * @file  QueryCache.java
+ *
+ * @author   John Miller
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*****************************************************************************************
+ * The QueryCache class caches the results of LogicalPlans, so that a read query repeated
+ * between writes is a hash lookup:
+ * <pre>
+ *     var cache = new QueryCache (64 << 20);                      // 64 MB of results
+ *     var q = LogicalPlan.scan (movie).select ("year", "<", 1980).project ("title year");
+ *     cache.execute (q).print ();                                  // runs the plan
+ *     cache.execute (q).print ();                                  // hit
+ * </pre>
+ * A result is keyed by the canonical text of its plan (stacked selections in a fixed
+ * order) together with the version of each table scanned, which Table.insert bumps: once
+ * a table changes, the results over it can no longer be found, and they are dropped on
+ * the next miss.  Results are shared, so they are made read-only (see Table.freeze).
+ * The cache is bounded by the estimated size of its results and evicts the least
+ * recently used ones first.
+ */
+public class QueryCache
+{
+    /** The estimated bytes taken by a result tuple beyond its column references
+     *  (array header and the result list's reference to it)
+     */
+    private static final int TUPLE_BYTES = 24;
+
+    /** The maximum estimated size of the cached results, in bytes
+     */
+    private final long capacity;
+
+    /** The estimated size of the cached results, in bytes
+     */
+    private long size = 0;
+
+    /** The number of lookups answered from and not from the cache
+     */
+    private long hits = 0, misses = 0;
+
+    /** The cached results by canonical plan, in least to most recently used order
+     */
+    private final LinkedHashMap <String, Entry> entries = new LinkedHashMap <> (16, 0.75f, true);
+
+    /*************************************************************************************
+     * Construct a query cache.
+     * @param _capacity  the maximum estimated size of the cached results, in bytes
+     */
+    public QueryCache (long _capacity)
+    {
+        capacity = _capacity;
+    } // constructor
+
+    /*************************************************************************************
+     * Return the result of the plan, from the cache if it holds the result over the
+     * current versions of its tables, else by executing it (and caching the result).
+     * A plan that just scans a table is executed directly.
+     * @param plan  the plan to execute
+     * @return  the (read-only) table produced by the plan
+     */
+    public Table execute (LogicalPlan plan)
+    {
+        if (plan instanceof LogicalPlan.Scan) return plan.execute ();
+
+        var tables = new ArrayList <Table> ();
+        var sb     = new StringBuilder ();
+        canonical (plan, sb, tables);
+        var versions = new long [tables.size ()];
+        for (int i = 0; i < versions.length; i++) versions [i] = tables.get (i).version ();
+        var key = sb.append (' ').append (Arrays.toString (versions)).toString ();
+
+        synchronized (this) {
+            var e = entries.get (key);
+            if (e != null && e.over (tables)) { hits++; return e.result; }
+            misses++;
+            purge ();
+        } // synchronized
+
+        var result = plan.execute ();
+        if (tables.contains (result)) return result;                    // a base table (e.g., a key lookup missed)
+        for (int i = 0; i < versions.length; i++) {
+            if (tables.get (i).version () != versions [i]) return result;   // changed while running: not cached
+        } // for
+        result.freeze ();
+        put (key, new Entry (result, tables.toArray (new Table [0]), versions));
+        return result;
+    } // execute
+
+    /*************************************************************************************
+     * Return the number of lookups answered from the cache.
+     * @return  the number of hits
+     */
+    public synchronized long hits ()
+    {
+        return hits;
+    } // hits
+
+    /*************************************************************************************
+     * Return the number of lookups not answered from the cache.
+     * @return  the number of misses
+     */
+    public synchronized long misses ()
+    {
+        return misses;
+    } // misses
+
+    /*************************************************************************************
+     * Return the estimated size of the cached results.
+     * @return  the size in bytes
+     */
+    public synchronized long size ()
+    {
+        return size;
+    } // size
+
+    /*************************************************************************************
+     * Drop all the cached results.
+     */
+    public synchronized void clear ()
+    {
+        entries.clear ();
+        size = 0;
+    } // clear
+
+    /*************************************************************************************
+     * Cache a result, evicting the least recently used results until it fits.  A result
+     * larger than the whole cache is not kept.
+     * @param key  the canonical plan with the table versions
+     * @param e    the entry holding the result
+     */
+    private synchronized void put (String key, Entry e)
+    {
+        if (e.bytes > capacity) return;
+        var old = entries.put (key, e);
+        if (old != null) size -= old.bytes;
+        size += e.bytes;
+        for (Iterator <Entry> it = entries.values ().iterator (); size > capacity && it.hasNext (); ) {
+            var lru = it.next ();
+            if (lru == e) continue;
+            size -= lru.bytes;
+            it.remove ();
+        } // for
+    } // put
+
+    /*************************************************************************************
+     * Drop the results over tables that have changed since they were computed.
+     */
+    private void purge ()
+    {
+        for (Iterator <Map.Entry <String, Entry>> it = entries.entrySet ().iterator (); it.hasNext (); ) {
+            var e = it.next ().getValue ();
+            if (e.stale ()) { size -= e.bytes; it.remove (); }
+        } // for
+    } // purge
+
+    /*************************************************************************************
+     * Append the canonical text of the plan, collecting the tables it scans in order.
+     * Stacked selections are put in a fixed order, since any order gives the same result,
+     * and constants are tagged with their classes (1980 and 1980L compare differently).
+     * @param plan    the plan
+     * @param sb      the canonical text
+     * @param tables  the tables scanned
+     */
+    static void canonical (LogicalPlan plan, StringBuilder sb, List <Table> tables)
+    {
+        if (plan instanceof LogicalPlan.Scan) {
+            var table = ((LogicalPlan.Scan) plan).table;
+            tables.add (table);
+            sb.append ("scan(").append (table.getName ()).append (')');
+
+        } else if (plan instanceof LogicalPlan.Select) {
+            var conds = new ArrayList <String> ();
+            LogicalPlan node = plan;
+            for ( ; node instanceof LogicalPlan.Select; node = ((LogicalPlan.Select) node).input) {
+                var s = (LogicalPlan.Select) node;
+                conds.add (s.attr + ColumnBatch.OPS [s.op]
+                         + ((s.value == null) ? "null" : s.value.getClass ().getSimpleName () + ":" + s.value));
+            } // for
+            conds.sort (null);
+            sb.append ("select").append (conds).append ('(');
+            canonical (node, sb, tables);
+            sb.append (')');
+
+        } else if (plan instanceof LogicalPlan.Project) {
+            var p = (LogicalPlan.Project) plan;
+            sb.append ("project").append (Arrays.toString (p.attrs)).append ('(');
+            canonical (p.input, sb, tables);
+            sb.append (')');
+
+        } else if (plan instanceof LogicalPlan.Join) {
+            var jn = (LogicalPlan.Join) plan;
+            sb.append ("join").append (Arrays.toString (jn.attrs1)).append (Arrays.toString (jn.attrs2))
+              .append (jn.method).append ('(');
+            canonical (jn.left, sb, tables);
+            sb.append (',');
+            canonical (jn.right, sb, tables);
+            sb.append (')');
+
+        } else {
+            var a = (LogicalPlan.Arrange) plan;
+            sb.append ("arrange").append (Arrays.toString (a.cols)).append (Arrays.toString (a.names))
+              .append (Arrays.toString (a.key)).append ('(');
+            canonical (a.input, sb, tables);
+            sb.append (')');
+        } // if
+    } // canonical
+
+    /*****************************************************************************************
+     * The Entry class holds a cached result with the tables it was computed over (and
+     * their versions then) and its estimated size.
+     */
+    private static class Entry
+    {
+        final Table result;
+        final Table [] tables;
+        final long [] versions;
+        final long bytes;
+
+        Entry (Table _result, Table [] _tables, long [] _versions)
+        {
+            result   = _result;
+            tables   = _tables;
+            versions = _versions;
+            bytes    = (long) result.size () * (TUPLE_BYTES + 4L * result.getAttributes ().length);
+        } // constructor
+
+        boolean over (List <Table> current)                              // same table objects (names may repeat)
+        {
+            for (int i = 0; i < tables.length; i++) if (tables [i] != current.get (i)) return false;
+            return true;
+        } // over
+
+        boolean stale ()
+        {
+            for (int i = 0; i < tables.length; i++) if (tables [i].version () != versions [i]) return true;
+            return false;
+        } // stale
+
+    } // Entry class
+
+} // QueryCache class
@@ -0,0 +1,212 @@
+package main;
+/*****************************************************************************************
+ * @file  QueryCompiler.java
+ *
+ * @author   John Miller
+ */
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Objects;
+
+/*****************************************************************************************
+ * The QueryCompiler class compiles structured predicates ("attr op value" and their
+ * conjunctions) and projection lists into method handle trees specialized for one query:
+ * the column offsets and the constants compared with are bound into the handles, and a
+ * comparison on an integer or real column unboxes with a cast to the column's class and
+ * compares primitives.  Unlike a predicate lambda (a megamorphic call per tuple doing
+ * generic compareTo calls), the JIT can inline the whole tree into the loop running it.
+ * <pre>
+ *     var p = QueryCompiler.and (QueryCompiler.predicate (domain, 3, ColumnBatch.LT, 1980),
+ *                                QueryCompiler.predicate (domain, 5, ColumnBatch.EQ, "drama"));
+ *     if (QueryCompiler.test (p, t)) ...
+ * </pre>
+ * Predicates have type (Comparable []) boolean and projections (Comparable []) Comparable [].
+ * A null value never satisfies a comparison.
+ */
+final class QueryCompiler
+{
+    /** The handle getting an element of a tuple: (Comparable [], int) Comparable
+     */
+    private static final MethodHandle GET = MethodHandles.arrayElementGetter (Comparable [].class);
+
+    /** The handle testing a value for null: (Comparable) boolean
+     */
+    private static final MethodHandle NON_NULL;
+
+    /** The handles comparing longs, doubles and Comparables, indexed by operator
+     *  (see ColumnBatch): (long, long) boolean, (double, double) boolean and
+     *  (Comparable, Comparable) boolean
+     */
+    private static final MethodHandle [] LONG_OPS = new MethodHandle [ColumnBatch.OPS.length];
+    private static final MethodHandle [] DOUBLE_OPS = new MethodHandle [ColumnBatch.OPS.length];
+    private static final MethodHandle [] OBJECT_OPS = new MethodHandle [ColumnBatch.OPS.length];
+
+    /** The predicate that is always false: (Comparable []) boolean
+     */
+    private static final MethodHandle FALSE = MethodHandles.dropArguments (
+                                              MethodHandles.constant (boolean.class, false), 0, Comparable [].class);
+
+    static {
+        var lookup = MethodHandles.lookup ();
+        var names  = new String [] { "eq", "ne", "lt", "le", "gt", "ge" };
+        try {
+            NON_NULL = lookup.findStatic (Objects.class, "nonNull", MethodType.methodType (boolean.class, Object.class))
+                             .asType (MethodType.methodType (boolean.class, Comparable.class));
+            for (int op = 0; op < names.length; op++) {
+                LONG_OPS [op]   = lookup.findStatic (QueryCompiler.class, names [op],
+                                  MethodType.methodType (boolean.class, long.class, long.class));
+                DOUBLE_OPS [op] = lookup.findStatic (QueryCompiler.class, names [op],
+                                  MethodType.methodType (boolean.class, double.class, double.class));
+                OBJECT_OPS [op] = lookup.findStatic (QueryCompiler.class, names [op],
+                                  MethodType.methodType (boolean.class, Comparable.class, Comparable.class));
+            } // for
+        } catch (ReflectiveOperationException ex) {
+            throw new ExceptionInInitializerError (ex);
+        } // try
+    } // static
+
+    /*************************************************************************************
+     * Don't construct: the class only has static methods.
+     */
+    private QueryCompiler () {}
+
+    /*************************************************************************************
+     * Compile the predicate "t [col] op value" for tuples with the given domains.
+     * @param domain  the domains of the tuples' columns
+     * @param col     the column compared
+     * @param op      the comparison operator (see ColumnBatch)
+     * @param value   the value compared with
+     * @return  the predicate handle
+     */
+    static MethodHandle predicate (Class [] domain, int col, int op, Comparable value)
+    {
+        if (value == null) return FALSE;
+        var get = MethodHandles.insertArguments (GET, 1, col);             // (Comparable []) Comparable
+        var d   = domain [col];
+
+        MethodHandle unbox, cmp;                                         // typed value, then comparison
+        if (EncodedColumn.isIntegral (d) && EncodedColumn.isIntegral (value.getClass ())) {
+            unbox = primitive (d, long.class);
+            cmp   = MethodHandles.insertArguments (LONG_OPS [op], 1, ((Number) value).longValue ());
+        } else if ((d == Double.class || d == Float.class) && value instanceof Number) {
+            unbox = primitive (d, double.class);
+            cmp   = MethodHandles.insertArguments (DOUBLE_OPS [op], 1, ((Number) value).doubleValue ());
+        } else {
+            unbox = null;
+            cmp   = MethodHandles.insertArguments (OBJECT_OPS [op], 1, value);
+        } // if
+        var typed = (unbox == null) ? get : MethodHandles.filterReturnValue (get, unbox);
+        var test  = MethodHandles.filterReturnValue (typed, cmp);
+        return MethodHandles.guardWithTest (MethodHandles.filterReturnValue (get, NON_NULL), test, FALSE);
+    } // predicate
+
+    /*************************************************************************************
+     * Compile the conjunction of two predicates (q is only evaluated when p holds).
+     * @param p  the first predicate handle
+     * @param q  the second predicate handle
+     * @return  the handle for "p and q"
+     */
+    static MethodHandle and (MethodHandle p, MethodHandle q)
+    {
+        return MethodHandles.guardWithTest (p, q, FALSE);
+    } // and
+
+    /*************************************************************************************
+     * Compile the projection of tuples onto the given columns, in order.
+     * @param cols  the columns to keep
+     * @return  the projection handle
+     */
+    static MethodHandle projection (int [] cols)
+    {
+        var gets = new MethodHandle [cols.length];
+        for (int j = 0; j < cols.length; j++) gets [j] = MethodHandles.insertArguments (GET, 1, cols [j]);
+        var collect = MethodHandles.identity (Comparable [].class).asCollector (Comparable [].class, cols.length);
+        return MethodHandles.permuteArguments (MethodHandles.filterArguments (collect, 0, gets),
+                                               MethodType.methodType (Comparable [].class, Comparable [].class),
+                                               new int [cols.length]);          // each getter gets the tuple
+    } // projection
+
+    /*************************************************************************************
+     * Run a compiled predicate on a tuple.
+     * @param p  the predicate handle
+     * @param t  the tuple
+     * @return  whether the tuple satisfies the predicate
+     */
+    static boolean test (MethodHandle p, Comparable [] t)
+    {
+        try {
+            return (boolean) p.invokeExact (t);
+        } catch (RuntimeException | Error ex) {
+            throw ex;
+        } catch (Throwable ex) {
+            throw new IllegalStateException (ex);
+        } // try
+    } // test
+
+    /*************************************************************************************
+     * Run a compiled projection on a tuple.
+     * @param proj  the projection handle
+     * @param t     the tuple
+     * @return  the projected tuple
+     */
+    static Comparable [] apply (MethodHandle proj, Comparable [] t)
+    {
+        try {
+            return (Comparable []) proj.invokeExact (t);
+        } catch (RuntimeException | Error ex) {
+            throw ex;
+        } catch (Throwable ex) {
+            throw new IllegalStateException (ex);
+        } // try
+    } // apply
+
+    /*************************************************************************************
+     * Return the handle unboxing a value of the given (boxed) class into the given
+     * primitive type, cast to that exact class so the call is monomorphic.
+     * @param boxed  the value's class (e.g., Integer)
+     * @param prim   the primitive type wanted (long or double)
+     * @return  the handle (Comparable) prim
+     */
+    private static MethodHandle primitive (Class boxed, Class prim)
+    {
+        try {
+            var own = (Class) MethodType.methodType (boxed).unwrap ().returnType ();  // e.g., int for Integer
+            var get = MethodHandles.lookup ().findVirtual (boxed, own.getName () + "Value", MethodType.methodType (own));
+            return get.asType (MethodType.methodType (prim, Comparable.class));
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalArgumentException ("QueryCompiler: cannot unbox " + boxed, ex);
+        } // try
+    } // primitive
+
+    // The comparisons bound into the handles
+
+    private static boolean eq (long a, long b)      { return a == b; }
+    private static boolean ne (long a, long b)      { return a != b; }
+    private static boolean lt (long a, long b)      { return a <  b; }
+    private static boolean le (long a, long b)      { return a <= b; }
+    private static boolean gt (long a, long b)      { return a >  b; }
+    private static boolean ge (long a, long b)      { return a >= b; }
+
+    private static boolean eq (double a, double b)  { return a == b; }
+    private static boolean ne (double a, double b)  { return a != b; }
+    private static boolean lt (double a, double b)  { return a <  b; }
+    private static boolean le (double a, double b)  { return a <= b; }
+    private static boolean gt (double a, double b)  { return a >  b; }
+    private static boolean ge (double a, double b)  { return a >= b; }
+
+    @SuppressWarnings("unchecked")
+    private static boolean eq (Comparable a, Comparable b)  { return a.compareTo (b) == 0; }
+    @SuppressWarnings("unchecked")
+    private static boolean ne (Comparable a, Comparable b)  { return a.compareTo (b) != 0; }
+    @SuppressWarnings("unchecked")
+    private static boolean lt (Comparable a, Comparable b)  { return a.compareTo (b) <  0; }
+    @SuppressWarnings("unchecked")
+    private static boolean le (Comparable a, Comparable b)  { return a.compareTo (b) <= 0; }
+    @SuppressWarnings("unchecked")
+    private static boolean gt (Comparable a, Comparable b)  { return a.compareTo (b) >  0; }
+    @SuppressWarnings("unchecked")
+    private static boolean ge (Comparable a, Comparable b)  { return a.compareTo (b) >= 0; }
+
+} // QueryCompiler class
@@ -0,0 +1,114 @@
+package main;
+/*****************************************************************************************
+ * @file  RunLengthInts.java
+ *
+ * @author   John Miller
+ */
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/*****************************************************************************************
+ * The RunLengthInts class stores an array of ints as runs of equal values, which is
+ * compact for sorted (or clustered) columns.  Run r holds value [r] at the positions
+ * from end [r-1] (or 0) up to, but not including, end [r].
+ */
+class RunLengthInts
+      implements Serializable
+{
+    /** The value of each run
+     */
+    private final int [] value;
+
+    /** The (exclusive) end position of each run
+     */
+    private final int [] end;
+
+    /*************************************************************************************
+     * Run-length encode the given values.
+     * @param values  the values to encode
+     */
+    RunLengthInts (int [] values)
+    {
+        var nRuns = countRuns (values);
+        value = new int [nRuns];
+        end   = new int [nRuns];
+        var r = -1;
+        for (int i = 0; i < values.length; i++) {
+            if (r < 0 || values [i] != value [r]) value [++r] = values [i];
+            end [r] = i + 1;
+        } // for
+    } // constructor
+
+    /*************************************************************************************
+     * Return the i-th value.
+     * @param i  the position of the value
+     * @return  the value at position i
+     */
+    int get (int i)
+    {
+        var r = Arrays.binarySearch (end, i + 1);
+        return value [(r >= 0) ? r : -r - 1];
+    } // get
+
+    /*************************************************************************************
+     * Return the number of runs.
+     * @return  the number of runs
+     */
+    int runs ()
+    {
+        return value.length;
+    } // runs
+
+    /*************************************************************************************
+     * Return the value of run r.
+     * @param r  the run
+     * @return  the value repeated in run r
+     */
+    int runValue (int r)
+    {
+        return value [r];
+    } // runValue
+
+    /*************************************************************************************
+     * Return the first position of run r.
+     * @param r  the run
+     * @return  the start position of run r
+     */
+    int runStart (int r)
+    {
+        return (r == 0) ? 0 : end [r - 1];
+    } // runStart
+
+    /*************************************************************************************
+     * Return the (exclusive) end position of run r.
+     * @param r  the run
+     * @return  the end position of run r
+     */
+    int runEnd (int r)
+    {
+        return end [r];
+    } // runEnd
+
+    /*************************************************************************************
+     * Return the number of bytes used by the runs.
+     * @return  the memory size in bytes
+     */
+    long memorySize ()
+    {
+        return 8L * value.length;
+    } // memorySize
+
+    /*************************************************************************************
+     * Count the number of runs of equal values.
+     * @param values  the values
+     * @return  the number of runs
+     */
+    static int countRuns (int [] values)
+    {
+        var n = (values.length == 0) ? 0 : 1;
+        for (int i = 1; i < values.length; i++) if (values [i] != values [i - 1]) n++;
+        return n;
+    } // countRuns
+
+} // RunLengthInts class
@@ -0,0 +1,150 @@
+package main;
+/*****************************************************************************************
+ * @file  SpillFile.java
+ *
+ * @author   John Miller
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/*****************************************************************************************
+ * The SpillFile class provides a temporary file of tuples in the store directory, used
+ * by operators (duplicate elimination, sorting) whose working set exceeds their memory
+ * budget.  Tuples are written sequentially, then read back sequentially, and the file
+ * is deleted when no longer needed.
+ */
+class SpillFile
+{
+    /** The temporary file
+     */
+    private final File file;
+
+    /** The stream used for writing (null once writing is finished)
+     */
+    private DataOutputStream dos;
+
+    /** The streams of the reads not finished yet
+     */
+    private final List <DataInputStream> reading = new ArrayList <> ();
+
+    /** The number of tuples written
+     */
+    private int size = 0;
+
+    /*************************************************************************************
+     * Create a new, empty spill file.
+     * @param prefix  the prefix for the file's name (e.g., the operator's name)
+     * @throws IOException  if the file cannot be created
+     */
+    SpillFile (String prefix)
+              throws IOException
+    {
+        var dir = new File (Table.DIR);
+        dir.mkdirs ();
+        file = File.createTempFile (prefix, ".spill", dir);
+        dos  = new DataOutputStream (new BufferedOutputStream (new FileOutputStream (file), 1 << 16));
+    } // constructor
+
+    /*************************************************************************************
+     * Append a tuple to the spill file.
+     * @param t  the tuple to write
+     * @throws IOException  if the write fails
+     */
+    void write (Comparable [] t)
+         throws IOException
+    {
+        TupleCodec.write (dos, t);
+        size++;
+    } // write
+
+    /*************************************************************************************
+     * Return the number of tuples written.
+     * @return  the number of tuples in the file
+     */
+    int size ()
+    {
+        return size;
+    } // size
+
+    /*************************************************************************************
+     * Finish writing and return an iterator reading the tuples back in order.  I/O
+     * errors while reading are thrown as UncheckedIOException.  The file is closed
+     * once the last tuple is read, or by delete should the iterator be abandoned.
+     * @return  the iterator over the tuples in the file
+     * @throws IOException  if the file cannot be opened
+     */
+    Iterator <Comparable []> read ()
+                             throws IOException
+    {
+        if (dos != null) { dos.close (); dos = null; }
+        if (size == 0) return Collections.emptyIterator ();              // no file to open
+        var dis = new DataInputStream (new BufferedInputStream (new FileInputStream (file), 1 << 16));
+        reading.add (dis);
+
+        return new Iterator <Comparable []> () {
+            int left = size;
+
+            public boolean hasNext ()
+            {
+                return left > 0;
+            } // hasNext
+
+            public Comparable [] next ()
+            {
+                if (left == 0) throw new NoSuchElementException ();
+                try {
+                    var t = TupleCodec.read (dis);
+                    if (--left == 0) close (dis);
+                    return t;
+                } catch (EOFException ex) {
+                    throw new UncheckedIOException ("SpillFile: truncated " + file, ex);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException (ex);
+                } // try
+            } // next
+        };
+    } // read
+
+    /*************************************************************************************
+     * Delete the spill file.
+     */
+    void delete ()
+    {
+        try {
+            if (dos != null) { dos.close (); dos = null; }
+        } catch (IOException ex) {
+            // ignore: the file is being discarded
+        } // try
+        while (! reading.isEmpty ()) close (reading.get (0));          // abandoned reads
+        file.delete ();
+    } // delete
+
+    /*************************************************************************************
+     * Close the stream of a read.
+     * @param dis  the stream to close
+     */
+    private void close (DataInputStream dis)
+    {
+        reading.remove (dis);
+        try {
+            dis.close ();
+        } catch (IOException ex) {
+            // ignore: only read from
+        } // try
+    } // close
+
+} // SpillFile class
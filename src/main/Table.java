@@ -7,19 +7,42 @@ package main;
 
 import static java.lang.System.out;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Spliterator;
 import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
 
 /****************************************************************************************
  * This class implements relational database tables (including attribute names,
@@ -32,13 +55,52 @@ public class Table implements Serializable {
 	/**
 	 * Relative path for storage directory
 	 */
-	private static final String DIR = "store" + File.separator;
+	static final String DIR = "store" + File.separator;
 
 	/**
 	 * Filename extension for database files
 	 */
 	private static final String EXT = ".dbf";
 
+	/**
+	 * Filename extension for index files
+	 */
+	private static final String IDX = ".idx";
+
+	/**
+	 * Filename extension for write-ahead log files
+	 */
+	private static final String LOG = ".wal";
+
+	/**
+	 * Dictionary size beyond which a column whose values are mostly distinct is no
+	 * longer dictionary encoded on insert.
+	 */
+	private static final int DICT_LIMIT = 4096;
+
+	/**
+	 * Memory budget, in tuples, for the hash tables and sort buffers of operators;
+	 * beyond it they spill to files in the store directory. It may be changed (e.g.,
+	 * lowered to exercise spilling) and is read when an operator runs.
+	 */
+	static volatile int memoryRows = 1 << 20;
+
+	/**
+	 * Number of partitions (spill files) used by an operator that spills.
+	 */
+	private static final int SPILL_PARTS = 16;
+
+	/**
+	 * Number of rows a checkpoint copies per critical section.
+	 */
+	private static final int CHECKPOINT_ROWS = 1 << 16;
+
+	/**
+	 * Locks serializing the saves and checkpoints of each table, by table name (the
+	 * name determines the files written).
+	 */
+	private static final Map<String, Object> fileLocks = new ConcurrentHashMap<>();
+
 	/**
 	 * Counter for naming temporary tables.
 	 */
@@ -71,9 +133,87 @@ public class Table implements Serializable {
 	private final String[] key;
 
 	/**
-	 * Index into tuples (maps key to tuple number).
+	 * Index into tuples (maps key to tuple number). The index is not serialized with
+	 * the table; it is stored in its own index file and is built (or reopened) on
+	 * first use, so null means "not built yet".
+	 */
+	private transient Map<KeyType, Comparable[]> index;
+
+	/**
+	 * Checksum of the table file this table was loaded from (0 if not loaded).
+	 */
+	private transient long checksum;
+
+	/**
+	 * Number of tuples read from the table file (the rest came from the log).
+	 */
+	private transient int loadedRows;
+
+	/**
+	 * The LSN of the last log record reflected in the saved table file.
+	 */
+	private long checkpointLsn = 0;
+
+	/**
+	 * Bloom filter on the primary key, saved with the table so that lookups of
+	 * missing keys need not open the index (null until first used).
+	 */
+	private BloomFilter keyFilter;
+
+	/**
+	 * Per-column statistics for selectivity estimation, saved with the table (null
+	 * until first requested or analyzed, then maintained on insert).
+	 */
+	private ColumnStats[] stats;
+
+	/**
+	 * Write-ahead log for inserts (null if the table is not logged).
+	 */
+	private transient WriteAheadLog wal;
+
+	/**
+	 * Per-column dictionaries used on insert to share a single instance of each
+	 * repeated String or Character value (null entries are not encoded).
+	 */
+	private transient ColumnDictionary[] dictionaries;
+
+	/**
+	 * Cache of encoded (compressed) columns, keyed by attribute name.
+	 */
+	private transient Map<String, EncodedColumn> encoded;
+
+	/**
+	 * Per-block min/max/null-count summaries of the columns (null until first used).
 	 */
-	private final Map<KeyType, Comparable[]> index;
+	private transient ZoneMap zoneMap;
+
+	/**
+	 * Number of tuples added since the table was created or loaded, so that cached
+	 * query results (see QueryCache) can tell they are stale.
+	 */
+	private transient volatile long version;
+
+	/**
+	 * Whether the table is read-only, e.g., a query result shared through a
+	 * QueryCache.
+	 */
+	private transient volatile boolean readOnly;
+
+	/**
+	 * Listeners told of each tuple inserted, e.g., materialized views (null until
+	 * the first is added). They are called after the insert, outside the table's
+	 * lock.
+	 */
+	private transient volatile CopyOnWriteArrayList<InsertListener> listeners;
+
+	/**
+	 * A listener told of each tuple inserted into a table, with the table's version
+	 * just after the tuple was added (so a listener can skip the tuples that its
+	 * snapshot of the table, taken at some version, already holds).
+	 */
+	interface InsertListener {
+		void inserted(Comparable[] tup, long version);
+	} // InsertListener
 
 	/**
 	 * The supported map types.
@@ -145,7 +285,7 @@ public class Table implements Serializable {
 		domain = _domain;
 		key = _key;
 		tuples = _tuples;
-		index = makeMap();
+		index = null; // built on first use
 	} // constructor
 
 	/************************************************************************************
@@ -169,6 +309,10 @@ public class Table implements Serializable {
 	/************************************************************************************
 	 * Project the tuples onto a lower dimension by keeping only the given
 	 * attributes. Check whether the original key is included in the projection.
+	 * If it is not, duplicate tuples are eliminated: by skipping adjacent duplicates
+	 * when the projection is a prefix of the key and the B+Tree index gives the
+	 * tuples in key order, otherwise with a hash set of the projected tuples, which
+	 * is partitioned into spill files if it outgrows the memory budget.
 	 *
 	 * #usage movie.project ("title year studioNo")
 	 *
@@ -197,27 +341,190 @@ public class Table implements Serializable {
 
 		if (flag1 == 0) {
 			var colDomain = extractDom(match(attrs), domain);
-			var newKey = (Arrays.asList(attrs).containsAll(Arrays.asList(key))) ? key : attrs;
+			var keepsKey = Arrays.asList(attrs).containsAll(Arrays.asList(key));
+			var newKey = keepsKey ? key : attrs;
+
+			List<Comparable[]> rows;
+			if (keepsKey) { // key retained, so the projected tuples are distinct
+				rows = new ArrayList<>(tuples.size());
+				var projection = QueryCompiler.projection(indexPos);
+				for (Comparable[] tuple : tuples)
+					rows.add(QueryCompiler.apply(projection, tuple)); // adds the selected tuples
+			} else if (index instanceof BpTreeMap && isKeyPrefix(attrs)) {
+				rows = projectSorted(indexPos);
+			} else {
+				rows = projectDistinct(indexPos);
+			} // if
+			if (rows == null)
+				return null;
+			return new Table(name + count++, attrs, colDomain, newKey, rows);
 
-			List<Comparable[]> rows = new ArrayList<>();
-			for (Comparable[] tuple : tuples) {
+		} else
+			return null;
 
-				Comparable[] temp = new Comparable[indexPos.length];
+	} // project
 
-				// the temp : comparable array stores each tuple obtained by the attribute
-				// projected
-				for (int i = 0; i < indexPos.length; i++) {
-					temp[i] = tuple[indexPos[i]];
+	/************************************************************************************
+	 * Project the tuples in key order (walking the leaves of the B+Tree index),
+	 * eliminating duplicates by comparing each projected tuple with the previous one.
+	 * Only valid when the projected columns are a prefix of the key.
+	 *
+	 * @param cols the column positions to keep
+	 * @return the distinct projected tuples, in key order
+	 */
+	@SuppressWarnings("unchecked")
+	private List<Comparable[]> projectSorted(int[] cols) {
+		List<Comparable[]> rows = new ArrayList<>();
+		Comparable[] prev = null;
+		var it = ((BpTreeMap<KeyType, Comparable[]>) index).entryIterator();
+		while (it.hasNext()) {
+			var p = pick(it.next().getValue(), cols);
+			if (prev == null || !Arrays.equals(p, prev))
+				rows.add(p);
+			prev = p;
+		} // while
+		return rows;
+	} // projectSorted
 
-				}
-				rows.add(temp); // adds the selected tuples
-			}
-			return new Table(name + count++, attrs, colDomain, newKey, rows);
+	/************************************************************************************
+	 * Project the tuples, eliminating duplicates with a hash set of the projected
+	 * tuples. If the number of distinct tuples exceeds the memory budget, start over
+	 * using spill files (see projectSpill).
+	 *
+	 * @param cols the column positions to keep
+	 * @return the distinct projected tuples
+	 */
+	private List<Comparable[]> projectDistinct(int[] cols) {
+		List<Comparable[]> rows = new ArrayList<>();
+		var seen = new HashSet<KeyType>();
+		for (Comparable[] t : tuples) {
+			var p = pick(t, cols);
+			if (seen.add(new KeyType(p))) {
+				rows.add(p);
+				if (seen.size() > memoryRows)
+					return projectSpill(cols);
+			} // if
+		} // for
+		return rows;
+	} // projectDistinct
 
-		} else
+	/************************************************************************************
+	 * Project the tuples, partitioning the projected tuples by hash into spill files
+	 * and then eliminating duplicates one partition at a time, so only one partition's
+	 * hash set is in memory at once.
+	 *
+	 * @param cols the column positions to keep
+	 * @return the distinct projected tuples (grouped by partition), or null on error
+	 */
+	private List<Comparable[]> projectSpill(int[] cols) {
+		out.println("RA> " + name + ".project: distinct set exceeds memory, spilling");
+		List<Comparable[]> rows = new ArrayList<>();
+		try {
+			distinctSpill(tuples.stream().map(t -> pick(t, cols)).iterator(), tuples.size(), 0, rows);
+			return rows;
+		} catch (IOException | UncheckedIOException ex) {
+			out.println("project: IO Exception");
+			ex.printStackTrace();
 			return null;
+		} // try
+	} // projectSpill
 
-	} // project
+	/************************************************************************************
+	 * Add the distinct tuples of the source to rows, partitioning them by hash into
+	 * spill files and eliminating duplicates one partition at a time. A partition
+	 * still holding more tuples than the memory budget is partitioned again on other
+	 * bits of the hash (unless that cannot split it, i.e., all its tuples fell into
+	 * one partition, or the hash bits are used up).
+	 *
+	 * @param source the tuples
+	 * @param n      the number of tuples in the source
+	 * @param level  the number of times these tuples were partitioned before
+	 * @param rows   the distinct tuples (added to)
+	 * @throws IOException if a spill file cannot be written or read
+	 */
+	private void distinctSpill(Iterator<Comparable[]> source, int n, int level, List<Comparable[]> rows)
+			throws IOException {
+		var parts = new SpillFile[SPILL_PARTS];
+		try {
+			for (int i = 0; i < parts.length; i++)
+				parts[i] = new SpillFile(name + "_project");
+			while (source.hasNext()) {
+				var p = source.next();
+				var h = Long.rotateRight(BloomFilter.mix(Arrays.hashCode(p)), 8 * level); // other bits per level
+				parts[(int) Long.remainderUnsigned(h, SPILL_PARTS)].write(p);
+			} // while
+
+			for (var part : parts) {
+				if (part.size() > memoryRows && part.size() < n && level < 7) {
+					distinctSpill(part.read(), part.size(), level + 1, rows);
+				} else {
+					var seen = new HashSet<KeyType>();
+					for (var it = part.read(); it.hasNext();) {
+						var p = it.next();
+						if (seen.add(new KeyType(p)))
+							rows.add(p);
+					} // for
+				} // if
+				part.delete();
+			} // for
+		} finally {
+			for (var part : parts)
+				if (part != null)
+					part.delete();
+		} // try
+	} // distinctSpill
+
+	/************************************************************************************
+	 * Determine whether the given attributes are (in any order) the first attributes
+	 * of the key, but not the whole key.
+	 *
+	 * @param attrs the attributes
+	 * @return whether attrs is a proper prefix of the key
+	 */
+	private boolean isKeyPrefix(String[] attrs) {
+		if (attrs.length >= key.length)
+			return false;
+		return Arrays.asList(key).subList(0, attrs.length).containsAll(Arrays.asList(attrs));
+	} // isKeyPrefix
+
+	/************************************************************************************
+	 * Pick the values at the given column positions out of tuple t.
+	 *
+	 * @param t    the tuple
+	 * @param cols the column positions
+	 * @return the smaller tuple
+	 */
+	private static Comparable[] pick(Comparable[] t, int[] cols) {
+		var p = new Comparable[cols.length];
+		for (int j = 0; j < cols.length; j++)
+			p[j] = t[cols[j]];
+		return p;
+	} // pick
+
+	/************************************************************************************
+	 * Return a scan of this table, the leaf of a pull-based query plan (see
+	 * Operator). Unlike the operators above, the operators chained onto a scan do
+	 * not materialize intermediate tables.
+	 *
+	 * #usage movie.scan ().select (t -> t[1].equals (1977)).project ("title").toTable ("q")
+	 *
+	 * @return a scan operator over the tuples of this table
+	 */
+	public Operator scan() {
+		return new Operator.Scan(attribute, domain, key, tuples);
+	} // scan
+
+	/************************************************************************************
+	 * Return a vectorized scan of this table, which evaluates comparison filters and
+	 * aggregates over batches of primitive column vectors (see BatchScan).
+	 *
+	 * #usage movie.batchScan ().where ("year", ">=", 1970).count ()
+	 *
+	 * @return a batch scan over the tuples of this table
+	 */
+	public BatchScan batchScan() {
+		return new BatchScan(name, attribute, domain, key, tuples);
+	} // batchScan
 
 	/************************************************************************************
 	 * Select the tuples satisfying the given predicate (Boolean function).
@@ -234,6 +541,116 @@ public class Table implements Serializable {
 				tuples.stream().filter(t -> predicate.test(t)).collect(Collectors.toList()));
 	} // select
 
+	/************************************************************************************
+	 * Select the tuples satisfying the given compiled predicate (see QueryCompiler).
+	 *
+	 * @param predicate the predicate handle, (Comparable []) boolean
+	 * @return a table with tuples satisfying the predicate
+	 */
+	Table select(MethodHandle predicate) {
+		out.println("RA> " + name + ".select (compiled " + predicate.type() + ")");
+
+		var rows = new ArrayList<Comparable[]>();
+		for (Comparable[] t : tuples)
+			if (QueryCompiler.test(predicate, t))
+				rows.add(t);
+		return new Table(name + count++, attribute, domain, key, rows);
+	} // select
+
+	/************************************************************************************
+	 * Select the tuples satisfying the given predicate, evaluating it in parallel.
+	 * The tuples are split evenly into about four chunks per thread, which a pool of
+	 * the given number of threads filters; the results are concatenated in tuple
+	 * order.
+	 *
+	 * #usage movie.select (t -> t[movie.col("year")].equals (1977), 8)
+	 *
+	 * @param predicate   the check condition for tuples
+	 * @param parallelism the number of threads to use
+	 * @return a table with tuples satisfying the predicate
+	 */
+	public Table select(Predicate<Comparable[]> predicate, int parallelism) {
+		out.println("RA> " + name + ".select (" + predicate + ", " + parallelism + ")");
+
+		var rows = parallelFilter(new TupleSpliterator(tuples, Math.max(1, parallelism)), predicate, parallelism);
+		return (rows == null) ? null : new Table(name + count++, attribute, domain, key, rows);
+	} // select
+
+	/************************************************************************************
+	 * Select the tuples satisfying the given predicate, running the scan morsel by
+	 * morsel on the scheduler's workers, which it shares fairly with the other
+	 * queries submitted to the scheduler.
+	 *
+	 * #usage movie.select (t -> t[movie.col("year")].equals (1977), scheduler)
+	 *
+	 * @param predicate the check condition for tuples
+	 * @param scheduler the scheduler to run the scan on
+	 * @return a table with tuples satisfying the predicate
+	 */
+	public Table select(Predicate<Comparable[]> predicate, MorselScheduler scheduler) {
+		out.println("RA> " + name + ".select (" + predicate + ", " + scheduler + ")");
+
+		try {
+			var rows = scheduler.submit(tuples, morsel -> {
+				var hits = new ArrayList<Comparable[]>();
+				for (var t : morsel)
+					if (predicate.test(t))
+						hits.add(t);
+				return hits;
+			}).get();
+			return new Table(name + count++, attribute, domain, key, rows);
+		} catch (InterruptedException | ExecutionException ex) {
+			out.println("select: " + ex);
+			return null;
+		} // try
+	} // select
+
+	/************************************************************************************
+	 * Select the tuples satisfying the given predicate in key order, evaluating it in
+	 * parallel over ranges of the B+Tree index's leaves (or over the tuples in storage
+	 * order for other index maps, or when tuples share a key value, since the index
+	 * then holds only one of them).
+	 *
+	 * @param predicate   the check condition for tuples
+	 * @param parallelism the number of threads to use
+	 * @return a table with tuples satisfying the predicate
+	 */
+	@SuppressWarnings("unchecked")
+	public Table indexedSelect(Predicate<Comparable[]> predicate, int parallelism) {
+		var p = Math.max(1, parallelism);
+		var idx = index();
+		var split = (idx instanceof BpTreeMap && indexHoldsAll())
+				? ((BpTreeMap<KeyType, Comparable[]>) idx).valueSpliterator(tuples.size() / (4 * p * 50) + 1)
+				: new TupleSpliterator(tuples, p);
+		var rows = parallelFilter(split, predicate, p);
+		return (rows == null) ? null : new Table(name + count++, attribute, domain, key, rows);
+	} // indexedSelect
+
+	/************************************************************************************
+	 * Filter the tuples given by the spliterator with a parallel stream run in a pool
+	 * of the given number of threads, keeping their order.
+	 *
+	 * @param split       the spliterator over the tuples
+	 * @param predicate   the check condition for tuples
+	 * @param parallelism the number of threads to use
+	 * @return the tuples satisfying the predicate, or null if the scan failed
+	 */
+	private static List<Comparable[]> parallelFilter(Spliterator<Comparable[]> split,
+			Predicate<Comparable[]> predicate, int parallelism) {
+		var stream = StreamSupport.stream(split, parallelism > 1).filter(predicate);
+		if (parallelism <= 1)
+			return stream.collect(Collectors.toList());
+		var pool = new ForkJoinPool(parallelism); // the stream's tasks run in this pool
+		try {
+			return pool.submit(() -> stream.collect(Collectors.toList())).get();
+		} catch (InterruptedException | ExecutionException ex) {
+			out.println("select: " + ex);
+			return null;
+		} finally {
+			pool.shutdown();
+		} // try
+	} // parallelFilter
+
 	public Table indexedSelect(Predicate<Comparable[]> predicate) {
 		
 	//  out.println ("RA> " + name + ".select (" + predicate + ")");
@@ -260,11 +677,13 @@ public class Table implements Serializable {
 
 		List<Comparable[]> rows = new ArrayList<>();
 
-		if (mType != MapType.NO_MAP) {
+		if (!mightContain(keyVal)) {
+			// definitely not present: no need to open the index or scan
+		} else if (mType != MapType.NO_MAP) {
 
-			if (index.get(keyVal) != null) {
-				rows.add(index.get(keyVal));
-			}
+			var match = index().get(keyVal);
+			if (match != null)
+				rows.add(match);
 		} else {
 
 			for (Comparable[] tup : tuples) // for loop iterates through all the tuples
@@ -281,99 +700,589 @@ public class Table implements Serializable {
 	} // select
 
 	/************************************************************************************
-	 * Union this table and table2. Check that the two tables are compatible.
+	 * Look up the tuple with the given key value, for key-value style access: unlike
+	 * select, nothing is printed and no result table is built, so a lookup is one
+	 * Bloom filter check and one index probe. The tuple returned is the table's own
+	 * (not a copy) and must not be modified.
 	 *
-	 * #usage movie.union (show)
+	 * #usage movie.lookup (new KeyType ("Star_Wars", 1977))
 	 *
-	 * @param table2 the rhs table in the union operation
-	 * @return a table representing the union
+	 * @param keyVal the key value
+	 * @return the tuple with that key value, or null if there is none
 	 */
-	public Table union(Table table2) {
-		out.println("RA> " + name + ".union (" + table2.name + ")");
-		if (!compatible(table2))
+	public Comparable[] lookup(KeyType keyVal) {
+		if (!mightContain(keyVal))
 			return null;
+		if (mType != MapType.NO_MAP)
+			return index().get(keyVal);
+		var cols = match(key);
+		for (Comparable[] tup : tuples)
+			if (keyVal.equals(keyOf(tup, cols)))
+				return tup;
+		return null;
+	} // lookup
 
-		List<Comparable[]> rows = new ArrayList<>();
+	/************************************************************************************
+	 * Look up the tuple with the given key attribute values, in key order.
+	 *
+	 * #usage movie.lookup ("Star_Wars", 1977)
+	 *
+	 * @param keyVal the values of the key attributes
+	 * @return the tuple with that key value, or null if there is none
+	 */
+	public Comparable[] lookup(Comparable... keyVal) {
+		return lookup(new KeyType(keyVal));
+	} // lookup
 
-		rows.addAll(tuples);
-		for (Comparable[] g : table2.tuples) {
-			if (!rows.contains(g))
-				rows.add(g);
-		}
+	/************************************************************************************
+	 * Select the tuples with any of the given key values, in one batch: the distinct
+	 * key values are looked up in ascending order, so the B+Tree index is walked
+	 * along its leaves instead of being descended once per key.
+	 *
+	 * #usage movie.selectMany (List.of (new KeyType ("Star_Wars", 1977), new KeyType ("Rocky", 1976)))
+	 *
+	 * @param keyVals the key values to look up
+	 * @return a table with the matching tuples, in key order
+	 */
+	public Table selectMany(Collection<KeyType> keyVals) {
+		out.println("RA> " + name + ".selectMany (" + keyVals.size() + " keys)");
+
+		var rows = new ArrayList<Comparable[]>();
+		for (var match : lookupAll(new ArrayList<>(new TreeSet<>(keyVals))))
+			if (match != null)
+				rows.add(match);
 		return new Table(name + count++, attribute, domain, key, rows);
-	}
+	} // selectMany
 
 	/************************************************************************************
-	 * Take the difference of this table and table2. Check that the two tables are
-	 * compatible.
-	 *
-	 * #usage movie.minus (show)
+	 * Look up many key values at once. Those the key's Bloom filter rules out are
+	 * skipped; the rest are sorted and looked up in one pass over the B+Tree leaves
+	 * (see BpTreeMap.getAll), probed one by one in another kind of index, or found
+	 * in a single scan of the tuples when there is no index.
 	 *
-	 * @param table2 The rhs table in the minus operation
-	 * @return a table representing the difference
+	 * @param keyVals the key values
+	 * @return the tuple with each key value (null for none), in the order given
 	 */
+	@SuppressWarnings("unchecked")
+	private Comparable[][] lookupAll(List<KeyType> keyVals) {
+		var matches = new Comparable[keyVals.size()][];
+		var wanted = new ArrayList<Integer>(keyVals.size()); // positions of the keys that may be present
+		for (int i = 0; i < keyVals.size(); i++)
+			if (mightContain(keyVals.get(i)))
+				wanted.add(i);
+
+		if (mType == MapType.NO_MAP) {
+			var positions = new HashMap<KeyType, List<Integer>>();
+			for (var i : wanted)
+				positions.computeIfAbsent(keyVals.get(i), k -> new ArrayList<>()).add(i);
+			var cols = match(key);
+			for (Comparable[] tup : tuples) {
+				var at = positions.get(keyOf(tup, cols));
+				if (at != null)
+					for (var i : at)
+						matches[i] = tup;
+			} // for
+		} else if (index() instanceof BpTreeMap) {
+			wanted.sort((i, j) -> keyVals.get(i).compareTo(keyVals.get(j)));
+			var sorted = new ArrayList<KeyType>(wanted.size());
+			for (var i : wanted)
+				sorted.add(keyVals.get(i));
+			var found = ((BpTreeMap<KeyType, Comparable[]>) index()).getAll(sorted);
+			for (int k = 0; k < found.size(); k++)
+				matches[wanted.get(k)] = found.get(k);
+		} else {
+			var map = index();
+			for (var i : wanted)
+				matches[i] = map.get(keyVals.get(i));
+		} // if
+		return matches;
+	} // lookupAll
+
 	/************************************************************************************
-	 * Take the difference of this table and table2. Check that the two tables are
-	 * compatible.
+	 * Select the tuples whose given attribute equals the given value. The predicate
+	 * is evaluated on the encoded (compressed) column: the value is looked up once
+	 * and only int codes are compared for each tuple.
 	 *
-	 * #usage movie.minus (show)
+	 * #usage movie.select ("genre", "sciFi")
 	 *
-	 * @param table2 The rhs table in the minus operation
-	 * @return a table representing the difference
+	 * @param attr  the attribute to compare
+	 * @param value the value to select
+	 * @return a table with the tuples having the given value
 	 */
-	public Table minus(Table table2) {
-		out.println("RA> " + name + ".minus (" + table2.name + ")");
-		// This will check if both the tables have same attributes or not.
-		if (!compatible(table2)) {
-			out.println("RA>" + name + " - " + table2.name
-					+ "is not possible as both the table have different attributes.");
-			return null;
-		}
+	public Table select(String attr, Comparable value) {
+		out.println("RA> " + name + ".select (" + attr + " == " + value + ")");
 
 		List<Comparable[]> rows = new ArrayList<>();
+		if (col(attr) < 0) {
+			out.println("RA> " + name + ".select: attribute " + attr + " does not exist");
+			return null;
+		} // if
+		for (var i : encode(attr).select(value))
+			rows.add(tuples.get(i));
+		return new Table(name + count++, attribute, domain, key, rows);
+	} // select
 
-		for (Comparable[] t : tuples) {
-			if (!table2.tuples.contains(t)) {
-				rows.add(t);
-			}
-		}
+	/************************************************************************************
+	 * Select the tuples whose given attribute is in the range [lo, hi]. The zone map
+	 * of the table is used to skip every block of tuples whose min/max range for the
+	 * attribute cannot overlap [lo, hi].
+	 *
+	 * #usage movie.select ("year", 1970, 1990)
+	 *
+	 * @param attr the attribute to compare
+	 * @param lo   the lower bound (inclusive), null for no lower bound
+	 * @param hi   the upper bound (inclusive), null for no upper bound
+	 * @return a table with the tuples in the range
+	 */
+	@SuppressWarnings("unchecked")
+	public Table select(String attr, Comparable lo, Comparable hi) {
+		out.println("RA> " + name + ".select (" + lo + " <= " + attr + " <= " + hi + ")");
 
+		var j = col(attr);
+		if (j < 0) {
+			out.println("RA> " + name + ".select: attribute " + attr + " does not exist");
+			return null;
+		} // if
+		List<Comparable[]> rows = new ArrayList<>();
+		var zones = zoneMap();
+		for (int b = 0; b < zones.blocks(); b++) {
+			if (!zones.mayContain(b, j, lo, hi))
+				continue; // skip the whole block
+			var end = Math.min((b + 1) * ZoneMap.BLOCK, tuples.size());
+			for (int i = b * ZoneMap.BLOCK; i < end; i++) {
+				var t = tuples.get(i);
+				if (t[j] != null && (lo == null || t[j].compareTo(lo) >= 0) && (hi == null || t[j].compareTo(hi) <= 0))
+					rows.add(t);
+			} // for
+		} // for
 		return new Table(name + count++, attribute, domain, key, rows);
+	} // select
 
-		// I M P L E M E N T E D
-
-	} // minus
+	/************************************************************************************
+	 * Return the given column in encoded (compressed) form. Dictionary codes are used
+	 * for strings and frame-of-reference codes for small integer ranges; the codes
+	 * are run-length encoded for sorted columns and bit-packed otherwise. The
+	 * encoded column is cached until further tuples are inserted.
+	 *
+	 * @param attr the attribute (column) to encode
+	 * @return the encoded column
+	 */
+	public synchronized EncodedColumn encode(String attr) {
+		if (encoded == null)
+			encoded = new HashMap<>();
+		var column = encoded.get(attr);
+		if (column == null || column.size() != tuples.size()) {
+			var j = col(attr);
+			var values = new Comparable[tuples.size()];
+			for (int i = 0; i < values.length; i++)
+				values[i] = tuples.get(i)[j];
+			column = new EncodedColumn(domain[j], values);
+			encoded.put(attr, column);
+		} // if
+		return column;
+	} // encode
 
 	/************************************************************************************
-	 * Join this table and table2 by performing an "equi-join". Tuples from both
-	 * tables are compared requiring attributes1 to equal attributes2. Disambiguate
-	 * attribute names by append "2" to the end of any duplicate attribute name.
-	 * Implement using a Nested Loop Join algorithm.
+	 * Group the tuples by the given attributes and compute the given aggregates for
+	 * each group, using a hash aggregation operator. The aggregates are count, sum,
+	 * avg, min and max, written as function(attribute), with count(*) counting tuples.
+	 * The result has the group attributes followed by one attribute per aggregate,
+	 * named function_attribute (count for count(*)).
 	 *
-	 * #usage movie.join ("studioNo", "name", studio)
+	 * #usage movie.groupBy ("studioName year", "count(*) avg(length) max(length)")
 	 *
-	 * @param attributes1 the attributes of this table to be compared (Foreign Key)
-	 * @param attributes2 the attributes of table2 to be compared (Primary Key)
-	 * @param table2      the rhs table in the join operation
-	 * @return a table with tuples satisfying the equality predicate
+	 * @param groupAttrs the attributes to group by (blank for a single group)
+	 * @param aggregates the aggregates to compute
+	 * @return a table with one tuple per group
 	 */
+	public Table groupBy(String groupAttrs, String aggregates) {
+		return groupBy(groupAttrs, aggregates, 1);
+	} // groupBy
 
-	public Table join(String attributes1, String attributes2, Table table2) {
-		out.println("RA> " + name + ".join (" + attributes1 + ", " + attributes2 + ", " + table2.name + ")");
+	/************************************************************************************
+	 * Group the tuples and compute aggregates as above, in two phases: each of the
+	 * given number of threads pre-aggregates its own slice of the tuples into a
+	 * thread-local hash table, and the partial results are then merged.
+	 *
+	 * #usage movie.groupBy ("studioName year", "count(*)", 8)
+	 *
+	 * @param groupAttrs  the attributes to group by (blank for a single group)
+	 * @param aggregates  the aggregates to compute
+	 * @param parallelism the number of threads to use
+	 * @return a table with one tuple per group
+	 */
+	public Table groupBy(String groupAttrs, String aggregates, int parallelism) {
+		out.println("RA> " + name + ".groupBy (" + groupAttrs + ", " + aggregates + ")");
+
+		var gAttrs = groupAttrs.trim().isEmpty() ? new String[0] : groupAttrs.trim().split(" ");
+		var specs = aggregates.trim().split(" ");
+		var attrs = new String[gAttrs.length + specs.length];
+		var doms = new Class[attrs.length];
+		var agg = aggregator(gAttrs, specs, attrs, doms);
+		if (agg == null)
+			return null;
 
-		if (!(attributes1 == null || attributes1.isEmpty() || attributes2 == null || attributes2.isEmpty()
-				|| table2 == null)) {
-			var t_attrs = attributes1.split(" ");
-			var u_attrs = attributes2.split(" ");
+		if (parallelism <= 1 || tuples.size() < 2 * parallelism) {
+			for (Comparable[] t : tuples)
+				agg.add(t);
+		} else {
+			var pool = new ForkJoinPool(parallelism);
+			try {
+				var slices = new ArrayList<Callable<HashAggregator>>();
+				var n = tuples.size();
+				for (int p = 0; p < parallelism; p++) {
+					var lo = (int) ((long) n * p / parallelism);
+					var hi = (int) ((long) n * (p + 1) / parallelism);
+					slices.add(() -> { // phase 1: thread-local pre-aggregation
+						var local = new HashAggregator(agg);
+						for (int i = lo; i < hi; i++)
+							local.add(tuples.get(i));
+						return local;
+					});
+				} // for
+				for (var partial : pool.invokeAll(slices))
+					agg.merge(partial.get()); // phase 2: merge
+			} catch (InterruptedException | ExecutionException ex) {
+				out.println("groupBy: " + ex);
+				return null;
+			} finally {
+				pool.shutdown();
+			} // try
+		} // if
 
-			var isJoinPossible = false; // assume join is not possible
+		var newKey = (gAttrs.length > 0) ? gAttrs : Arrays.copyOfRange(attrs, 0, attrs.length);
+		return new Table(name + count++, attrs, doms, newKey, agg.result());
+	} // groupBy
 
-			// check wether join is possible i.e check if all attributes1 is present in the
-			// Table1 and all attributes2 is present in the Table2
-			for (var table1Attributes : t_attrs) {
-				isJoinPossible = Arrays.stream(attribute).anyMatch(attrs -> table1Attributes.equals(attrs));
-				if (!isJoinPossible) {
-					out.println("RA> " + name + ".join (" + attributes1 + ", " + attributes2 + ", " + table2.name
+	/************************************************************************************
+	 * Make an empty hash aggregator computing the given aggregates of this table's
+	 * tuples grouped by the given attributes (see groupBy), filling in the names and
+	 * domains of the result's attributes.
+	 *
+	 * @param gAttrs the attributes to group by
+	 * @param specs  the aggregates, as function(attribute)
+	 * @param attrs  the result's attribute names (filled in)
+	 * @param doms   the result's attribute domains (filled in)
+	 * @return the aggregator, or null if an attribute or aggregate is invalid
+	 */
+	HashAggregator aggregator(String[] gAttrs, String[] specs, String[] attrs, Class[] doms) {
+		for (var g : gAttrs) {
+			if (col(g) < 0) {
+				out.println("RA> " + name + ".groupBy: attribute " + g + " does not exist");
+				return null;
+			} // if
+		} // for
+		var fn = new int[specs.length];
+		var aggCols = new int[specs.length];
+		var integral = new boolean[specs.length];
+		System.arraycopy(gAttrs, 0, attrs, 0, gAttrs.length);
+		System.arraycopy(extractDom(match(gAttrs), domain), 0, doms, 0, gAttrs.length);
+
+		for (int a = 0; a < specs.length; a++) {
+			var open = specs[a].indexOf('(');
+			fn[a] = (open < 0 || !specs[a].endsWith(")")) ? -1
+					: Arrays.asList(HashAggregator.FUNCTIONS).indexOf(specs[a].substring(0, open));
+			var attr = (fn[a] < 0) ? null : specs[a].substring(open + 1, specs[a].length() - 1);
+			aggCols[a] = (attr == null || attr.equals("*")) ? -1 : col(attr);
+			if (fn[a] < 0 || (aggCols[a] < 0 && !(fn[a] == HashAggregator.COUNT && "*".equals(attr)))) {
+				out.println("RA> " + name + ".groupBy: invalid aggregate " + specs[a]);
+				return null;
+			} // if
+			var dom = (aggCols[a] < 0) ? Long.class : domain[aggCols[a]];
+			integral[a] = EncodedColumn.isIntegral(dom);
+			if ((fn[a] == HashAggregator.SUM || fn[a] == HashAggregator.AVG)
+					&& !Number.class.isAssignableFrom(dom)) {
+				out.println("RA> " + name + ".groupBy: " + specs[a] + " needs a numeric attribute");
+				return null;
+			} // if
+			attrs[gAttrs.length + a] = (aggCols[a] < 0) ? "count" : HashAggregator.FUNCTIONS[fn[a]] + "_" + attr;
+			if (fn[a] == HashAggregator.COUNT)
+				doms[gAttrs.length + a] = Long.class;
+			else if (fn[a] == HashAggregator.SUM)
+				doms[gAttrs.length + a] = integral[a] ? Long.class : Double.class;
+			else if (fn[a] == HashAggregator.AVG)
+				doms[gAttrs.length + a] = Double.class;
+			else
+				doms[gAttrs.length + a] = dom;
+		} // for
+		return new HashAggregator(match(gAttrs), fn, aggCols, integral);
+	} // aggregator
+
+	/************************************************************************************
+	 * Sort the tuples on the given attributes (ORDER BY). The sort is done in memory
+	 * when the table fits the memory budget (memoryRows tuples); otherwise sorted
+	 * runs are written to spill files in the store directory and merged.
+	 *
+	 * #usage movie.orderBy ("year title", new boolean [] { true, false })
+	 *
+	 * @param attrs      the attributes to sort on, most significant first
+	 * @param descending whether each attribute is sorted in descending order (null
+	 *                   for all ascending)
+	 * @return a table with the tuples in sorted order
+	 */
+	public Table orderBy(String attrs, boolean[] descending) {
+		out.println("RA> " + name + ".orderBy (" + attrs + ", " + Arrays.toString(descending) + ")");
+
+		var sorter = sorter(attrs, descending);
+		if (sorter == null)
+			return null;
+		try {
+			return new Table(name + count++, attribute, domain, key, sorter.sort(tuples, memoryRows));
+		} catch (IOException ex) {
+			out.println("orderBy: IO Exception");
+			ex.printStackTrace();
+			return null;
+		} // try
+	} // orderBy
+
+	/************************************************************************************
+	 * Return the first n tuples in the order given by the sort attributes (fused
+	 * ORDER BY ... LIMIT n). Rather than sorting, a single pass keeps the best n
+	 * tuples in a bounded heap, using O(n) memory. When sorting ascending on exactly
+	 * the key and the B+Tree index is built and holds every tuple (no key value
+	 * repeats), the first n entries of its leaf scan are returned instead.
+	 *
+	 * #usage movie.orderBy ("length", new boolean [] { true }, 10)
+	 *
+	 * @param attrs      the attributes to sort on, most significant first
+	 * @param descending whether each attribute is sorted in descending order (null
+	 *                   for all ascending)
+	 * @param n          the number of tuples to return
+	 * @return a table with the first n tuples in sorted order
+	 */
+	@SuppressWarnings("unchecked")
+	public Table orderBy(String attrs, boolean[] descending, int n) {
+		out.println("RA> " + name + ".orderBy (" + attrs + ", " + Arrays.toString(descending) + ").limit (" + n + ")");
+
+		var sorter = sorter(attrs, descending);
+		if (sorter == null)
+			return null;
+
+		List<Comparable[]> rows;
+		var ascending = true;
+		for (var i = 0; descending != null && i < descending.length; i++)
+			ascending &= !descending[i];
+		if (index instanceof BpTreeMap && ascending && Arrays.equals(attrs.trim().split(" "), key) && indexHoldsAll()) {
+			rows = new ArrayList<>(); // push down into the index's leaf scan
+			var it = ((BpTreeMap<KeyType, Comparable[]>) index).entryIterator();
+			while (rows.size() < n && it.hasNext())
+				rows.add(it.next().getValue());
+		} else {
+			rows = sorter.top(tuples, n);
+		} // if
+		return new Table(name + count++, attribute, domain, key, rows);
+	} // orderBy
+
+	/************************************************************************************
+	 * Return the first n tuples of this table (LIMIT n), in its current order. For
+	 * the first n in a sorted order, use orderBy (attrs, descending, n), which keeps
+	 * only n tuples in a bounded heap rather than sorting the whole table first.
+	 *
+	 * #usage movie.limit (10)
+	 *
+	 * @param n the maximum number of tuples to keep
+	 * @return a table with the first n tuples
+	 */
+	public Table limit(int n) {
+		out.println("RA> " + name + ".limit (" + n + ")");
+
+		return new Table(name + count++, attribute, domain, key,
+				new ArrayList<>(tuples.subList(0, Math.max(0, Math.min(n, tuples.size())))));
+	} // limit
+
+	/************************************************************************************
+	 * Make a sorter for the given sort attributes, checking that they exist.
+	 *
+	 * @param attrs      the attributes to sort on, most significant first
+	 * @param descending whether each attribute is descending (null for all ascending)
+	 * @return the sorter, or null if the attributes are invalid
+	 */
+	private TupleSorter sorter(String attrs, boolean[] descending) {
+		var sAttrs = attrs.trim().split(" ");
+		if (descending == null)
+			descending = new boolean[sAttrs.length];
+		if (descending.length != sAttrs.length) {
+			out.println("RA> " + name + ".orderBy: need one descending flag per attribute");
+			return null;
+		} // if
+		for (var a : sAttrs) {
+			if (col(a) < 0) {
+				out.println("RA> " + name + ".orderBy: attribute " + a + " does not exist");
+				return null;
+			} // if
+		} // for
+		var cols = match(sAttrs);
+		return new TupleSorter(cols, descending, domain[cols[0]]);
+	} // sorter
+
+	/************************************************************************************
+	 * Union this table and table2. Check that the two tables are compatible.
+	 * Duplicate tuples (equal by value) are eliminated.
+	 *
+	 * #usage movie.union (show)
+	 *
+	 * @param table2 the rhs table in the union operation
+	 * @return a table representing the union
+	 */
+	public Table union(Table table2) {
+		return union(table2, false);
+	} // union
+
+	/************************************************************************************
+	 * Union this table and table2, with set semantics (duplicates eliminated) or bag
+	 * semantics (UNION ALL, all tuples kept). Tuples are compared by value using a
+	 * hash set, so this takes linear time.
+	 *
+	 * #usage movie.union (show, true)
+	 *
+	 * @param table2 the rhs table in the union operation
+	 * @param all    whether to keep duplicates (UNION ALL)
+	 * @return a table representing the union
+	 */
+	public Table union(Table table2, boolean all) {
+		out.println("RA> " + name + ".union" + (all ? "All" : "") + " (" + table2.name + ")");
+		if (!compatible(table2))
+			return null;
+
+		List<Comparable[]> rows = new ArrayList<>(tuples.size() + table2.tuples.size());
+		if (all) {
+			rows.addAll(tuples);
+			rows.addAll(table2.tuples);
+		} else {
+			var seen = new HashSet<KeyType>();
+			for (Comparable[] t : tuples) {
+				if (seen.add(new KeyType(t)))
+					rows.add(t);
+			} // for
+			for (Comparable[] t : table2.tuples) {
+				if (seen.add(new KeyType(t)))
+					rows.add(t);
+			} // for
+		} // if
+		return new Table(name + count++, attribute, domain, key, rows);
+	} // union
+
+	/************************************************************************************
+	 * Take the difference of this table and table2. Check that the two tables are
+	 * compatible. Duplicate tuples (equal by value) are eliminated.
+	 *
+	 * #usage movie.minus (show)
+	 *
+	 * @param table2 The rhs table in the minus operation
+	 * @return a table representing the difference
+	 */
+	public Table minus(Table table2) {
+		return minus(table2, false);
+	} // minus
+
+	/************************************************************************************
+	 * Take the difference of this table and table2, with set semantics or bag
+	 * semantics (EXCEPT ALL: each tuple of table2 cancels one equal tuple of this
+	 * table). Tuples are compared by value using a hash table, in linear time.
+	 *
+	 * #usage movie.minus (show, true)
+	 *
+	 * @param table2 The rhs table in the minus operation
+	 * @param all    whether to use bag semantics (EXCEPT ALL)
+	 * @return a table representing the difference
+	 */
+	public Table minus(Table table2, boolean all) {
+		out.println("RA> " + name + ".minus" + (all ? "All" : "") + " (" + table2.name + ")");
+		// This will check if both the tables have same attributes or not.
+		if (!compatible(table2)) {
+			out.println("RA>" + name + " - " + table2.name
+					+ "is not possible as both the table have different attributes.");
+			return null;
+		}
+
+		List<Comparable[]> rows = new ArrayList<>();
+		var counts = countTuples(table2);
+		var seen = new HashSet<KeyType>();
+		for (Comparable[] t : tuples) {
+			var k = new KeyType(t);
+			if (all) {
+				if (counts.merge(k, -1, Integer::sum) < 0) // nothing left to cancel t
+					rows.add(t);
+			} else if (!counts.containsKey(k) && seen.add(k)) {
+				rows.add(t);
+			} // if
+		} // for
+
+		return new Table(name + count++, attribute, domain, key, rows);
+	} // minus
+
+	/************************************************************************************
+	 * Intersect this table and table2. Check that the two tables are compatible.
+	 * Duplicate tuples (equal by value) are eliminated.
+	 *
+	 * #usage movie.intersect (cinema)
+	 *
+	 * @param table2 the rhs table in the intersect operation
+	 * @return a table representing the intersection
+	 */
+	public Table intersect(Table table2) {
+		return intersect(table2, false);
+	} // intersect
+
+	/************************************************************************************
+	 * Intersect this table and table2, with set semantics or bag semantics
+	 * (INTERSECT ALL: a tuple is kept as many times as it occurs in both tables).
+	 * Tuples are compared by value using a hash table, in linear time.
+	 *
+	 * #usage movie.intersect (cinema, true)
+	 *
+	 * @param table2 the rhs table in the intersect operation
+	 * @param all    whether to use bag semantics (INTERSECT ALL)
+	 * @return a table representing the intersection
+	 */
+	public Table intersect(Table table2, boolean all) {
+		out.println("RA> " + name + ".intersect" + (all ? "All" : "") + " (" + table2.name + ")");
+		if (!compatible(table2))
+			return null;
+
+		List<Comparable[]> rows = new ArrayList<>();
+		var counts = countTuples(table2);
+		for (Comparable[] t : tuples) {
+			var k = new KeyType(t);
+			var n = counts.get(k);
+			if (n != null && n > 0) {
+				rows.add(t);
+				counts.put(k, all ? n - 1 : 0); // set semantics: emit each tuple once
+			} // if
+		} // for
+		return new Table(name + count++, attribute, domain, key, rows);
+	} // intersect
+
+	/************************************************************************************
+	 * Join this table and table2 by performing an "equi-join". Tuples from both
+	 * tables are compared requiring attributes1 to equal attributes2. Disambiguate
+	 * attribute names by append "2" to the end of any duplicate attribute name.
+	 * Implement using a Nested Loop Join algorithm.
+	 *
+	 * #usage movie.join ("studioNo", "name", studio)
+	 *
+	 * @param attributes1 the attributes of this table to be compared (Foreign Key)
+	 * @param attributes2 the attributes of table2 to be compared (Primary Key)
+	 * @param table2      the rhs table in the join operation
+	 * @return a table with tuples satisfying the equality predicate
+	 */
+
+	public Table join(String attributes1, String attributes2, Table table2) {
+		out.println("RA> " + name + ".join (" + attributes1 + ", " + attributes2 + ", " + table2.name + ")");
+
+		if (!(attributes1 == null || attributes1.isEmpty() || attributes2 == null || attributes2.isEmpty()
+				|| table2 == null)) {
+			var t_attrs = attributes1.split(" ");
+			var u_attrs = attributes2.split(" ");
+
+			var isJoinPossible = false; // assume join is not possible
+
+			// check wether join is possible i.e check if all attributes1 is present in the
+			// Table1 and all attributes2 is present in the Table2
+			for (var table1Attributes : t_attrs) {
+				isJoinPossible = Arrays.stream(attribute).anyMatch(attrs -> table1Attributes.equals(attrs));
+				if (!isJoinPossible) {
+					out.println("RA> " + name + ".join (" + attributes1 + ", " + attributes2 + ", " + table2.name
 							+ ") is not possible as provided attribute " + table1Attributes
 							+ " is not present in the table1");
 					break;
@@ -408,17 +1317,18 @@ public class Table implements Serializable {
 				// comparing the provided attributes tuples in both the respective tables and
 				// constructing the final output
 				var rows = new ArrayList<Comparable[]>();
+				var cols1 = match(t_attrs); // column positions are resolved once, not per tuple
+				var cols2 = table2.match(u_attrs);
+				var filter = bloomFilter(t_attrs); // drop the table2 tuples that cannot match
+				var probe = table2.tuples.stream().filter(t2 -> filter.mightContain(keyOf(t2, cols2)))
+						.collect(Collectors.toList());
 				for (Comparable t[] : tuples) {
-					var table1Rows = extract(t, t_attrs);
-					for (Comparable t2[] : table2.tuples) {
-						var table2Rows = extractTable2(t2, u_attrs, table2);
-
-						for (int i = 0; i < table1Rows.length; i++) {
-							if (!table1Rows[i].equals(table2Rows[i]))
-								break;
+					var table1Rows = pick(t, cols1);
+					for (Comparable t2[] : probe) {
+						var table2Rows = pick(t2, cols2);
 
+						if (Arrays.equals(table1Rows, table2Rows)) // all the join attributes match
 							rows.add(ArrayUtil.concat(t, t2));
-						}
 					}
 				}
 
@@ -482,13 +1392,17 @@ public class Table implements Serializable {
 					matchTable2((String[]) table2UnCommonAttributes.toArray(new String[0]), table2), table2.domain));
 
 			// create final o/p by checking the tuples of common attributes if equal
+			// (column positions are resolved once, not per pair of tuples)
+			var cols1 = match(commonAttributes);
+			var cols2 = matchTable2(commonAttributes, table2);
+			var rest2 = QueryCompiler.projection(
+					matchTable2((String[]) table2UnCommonAttributes.toArray(new String[0]), table2));
 			for (Comparable t[] : tuples) {
+				var common = pick(t, cols1);
 				for (Comparable t2[] : table2.tuples) {
 
-					if (Arrays.asList(extract(t, commonAttributes))
-							.containsAll(Arrays.asList(extractTable2(t2, commonAttributes, table2)))) {
-						rows.add(ArrayUtil.concat(extract(t, attribute),
-								extractTable2(t2, (String[]) table2UnCommonAttributes.toArray(new String[0]), table2)));
+					if (Arrays.equals(common, pick(t2, cols2))) {
+						rows.add(ArrayUtil.concat(t, QueryCompiler.apply(rest2, t2)));
 					}
 				}
 			}
@@ -507,7 +1421,7 @@ public class Table implements Serializable {
 			for (Comparable t[] : tuples) {
 				for (Comparable t2[] : table2.tuples) {
 
-					rows.add(ArrayUtil.concat(extract(t, attribute), extractTable2(t2, table2.attribute, table2)));
+					rows.add(ArrayUtil.concat(t, t2));
 
 				}
 			}
@@ -520,7 +1434,9 @@ public class Table implements Serializable {
 
 	/************************************************************************************
 	 * Join this table and table2 by performing an "equi-join". Same as above, but
-	 * implemented using an Index Join algorithm.
+	 * implemented using an Index Join algorithm: each tuple of table2 is looked up
+	 * in this table's key index, so attributes1 must be the key (in any order). When
+	 * there is no such index, a hash join is used instead.
 	 *
 	 * @param attribute1 the attributes of this table to be compared (Foreign Key)
 	 * @param attribute2 the attributes of table2 to be compared (Primary Key)
@@ -580,17 +1496,15 @@ public class Table implements Serializable {
 
 				// comparing the provided attributes tuples in both the respective tables and
 				// constructing the final output
-				var rows = new ArrayList<Comparable[]>();
-				if (mType != MapType.NO_MAP) {
-					for (Comparable t2[] : table2.tuples) {
-						var table2Rows = extractTable2(t2, u_attrs, table2);
-
-						var table1Rows = index.get(new KeyType(table2Rows));
-						if (table1Rows != null) {
-							rows.add(ArrayUtil.concat(table1Rows, t2));
-						}
-					}
-				}
+				// probe this table's key index with each tuple of table2; the index only
+				// answers a join on the key, so otherwise fall back to a hash join
+				List<Comparable[]> rows;
+				if (keyedOn(t_attrs, false) && indexHoldsAll()) {
+					rows = probeIndex(t_attrs, table2, u_attrs, true);
+				} else {
+					out.println("RA> " + name + ".i_join: no index on " + attributes1 + ", using a hash join");
+					rows = hashRows(tuples, match(t_attrs), table2.tuples, table2.match(u_attrs));
+				} // if
 
 				return new Table(name + count++, attrs, ArrayUtil.concat(domain, table2.domain), key, rows);
 			}
@@ -668,30 +1582,26 @@ public class Table implements Serializable {
 				}
 
 //comparing the provided attributes tuples in both the respective tables and constructing the final output
+				// build a hash table on table2's join attributes (leaving out the tuples that
+				// the Bloom filter on this table's join attributes rules out), then probe it
+				// with each tuple of this table (duplicates on either side are kept)
 				var rows = new ArrayList<Comparable[]>();
-				Table hashedTable1 = new Table(name + count++, attribute, domain, attributes1.split(" "));
-
-				Table hashedTable2 = new Table(table2.name + count++, table2.attribute, table2.domain, attributes2.split(" "));
-
-				for (Comparable[] tup : tuples) {
-					hashedTable1.insert(tup);
-				}
-
-				for (Comparable[] tup : table2.tuples) {
-					hashedTable2.insert(tup);
-				}
-
-				for (Map.Entry<KeyType, Comparable[]> table1Key : hashedTable1.index.entrySet()) {
-
-					for (Map.Entry<KeyType, Comparable[]> table2Key : hashedTable2.index.entrySet()) {
-
-						if (table1Key.getKey().equals(table2Key.getKey())) {
-							rows.add(ArrayUtil.concat(table1Key.getValue(), table2Key.getValue()));
-						}
-
-					}
+				var cols1 = match(t_attrs);
+				var cols2 = table2.match(u_attrs);
+				var filter = bloomFilter(t_attrs); // drop the table2 tuples that cannot match
+				var build = new HashMap<KeyType, List<Comparable[]>>();
+				for (Comparable[] t2 : table2.tuples) {
+					var k2 = keyOf(t2, cols2);
+					if (filter.mightContain(k2))
+						build.computeIfAbsent(k2, k -> new ArrayList<>()).add(t2);
+				} // for
 
-				}
+				for (Comparable[] t : tuples) {
+					var matches = build.get(keyOf(t, cols1));
+					if (matches != null)
+						for (Comparable[] t2 : matches)
+							rows.add(ArrayUtil.concat(t, t2));
+				} // for
 
 				return new Table(name + count++, attrs, ArrayUtil.concat(domain, table2.domain), key, rows);
 			}
@@ -712,6 +1622,428 @@ public class Table implements Serializable {
 
 	} // h_join
 
+	/************************************************************************************
+	 * Join this table and table2 by performing an "equi-join", letting the table pick
+	 * the join algorithm at run time (see joinMethod): index nested loop, merge, hash
+	 * or Grace hash join (or nested loop for tiny inputs). The choice is reported on
+	 * the RA> line. The result is the same as for the other equi-joins, although the
+	 * order of its tuples depends on the algorithm.
+	 *
+	 * #usage movie.equiJoin ("studioName", "name", studio)
+	 *
+	 * @param attributes1 the attributes of this table to be compared (Foreign Key)
+	 * @param attributes2 the attributes of table2 to be compared (Primary Key)
+	 * @param table2      the rhs table in the join operation
+	 * @return a table with tuples satisfying the equality predicate
+	 */
+	public Table equiJoin(String attributes1, String attributes2, Table table2) {
+		if (attributes1 == null || attributes2 == null || table2 == null) {
+			out.println("RA> " + name + ".equiJoin: kindly provide all the attributes and table2");
+			return null;
+		} // if
+		var t_attrs = attributes1.trim().split(" ");
+		var u_attrs = attributes2.trim().split(" ");
+		if (t_attrs.length != u_attrs.length || !hasAll(t_attrs) || !table2.hasAll(u_attrs)) {
+			out.println("RA> " + name + ".equiJoin (" + attributes1 + ", " + attributes2 + ", " + table2.name
+					+ ") is not possible as the join attributes do not match the tables");
+			return null;
+		} // if
+
+		var method = joinMethod(t_attrs, u_attrs, table2);
+		out.println("RA> " + name + ".equiJoin (" + attributes1 + ", " + attributes2 + ", " + table2.name
+				+ ") using " + method);
+		return equiJoin(t_attrs, u_attrs, table2, method);
+	} // equiJoin
+
+	/************************************************************************************
+	 * Choose the algorithm for joining this table and table2 on the given attributes
+	 * from the sizes of the inputs, the key indexes on exactly the join attributes,
+	 * whether both inputs can be read in join attribute order (B+Tree key indexes)
+	 * and the memory budget, taking the one with the least estimated cost:
+	 *
+	 * nested loop  n1 * n2
+	 * index        n * INDEX_PROBE probes of the other input's key index (plus building it)
+	 * merge        n1 + n2 (plus building the ordered indexes)
+	 * hash         n1 + n2 + BUILD * min (n1, n2), if the smaller input fits in memory
+	 * grace hash   the hash join cost plus writing and reading both inputs once
+	 *
+	 * @param attrs1 the join attributes of this table
+	 * @param attrs2 the join attributes of table2
+	 * @param table2 the rhs table
+	 * @return the join method to use
+	 */
+	LogicalPlan.JoinMethod joinMethod(String[] attrs1, String[] attrs2, Table table2) {
+		double n1 = tuples.size(), n2 = table2.tuples.size();
+		var build1 = (index == null) ? Optimizer.BUILD * n1 : 0; // cost of building a key index
+		var build2 = (table2.index == null) ? Optimizer.BUILD * n2 : 0;
+
+		var method = LogicalPlan.JoinMethod.NESTED_LOOP;
+		var best = n1 * n2;
+		var hash = n1 + n2 + Optimizer.BUILD * Math.min(n1, n2);
+		if (Math.min(n1, n2) > memoryRows) { // build input does not fit: partition it first
+			if (hash + 2 * (n1 + n2) < best) {
+				method = LogicalPlan.JoinMethod.GRACE_HASH;
+				best = hash + 2 * (n1 + n2);
+			} // if
+		} else if (hash < best) {
+			method = LogicalPlan.JoinMethod.HASH;
+			best = hash;
+		} // if
+		var probe = Math.min(keyedOn(attrs1, false) ? Optimizer.INDEX_PROBE * n2 + build1 : Double.MAX_VALUE,
+				table2.keyedOn(attrs2, false) ? Optimizer.INDEX_PROBE * n1 + build2 : Double.MAX_VALUE);
+		if (probe < best) {
+			method = LogicalPlan.JoinMethod.INDEX;
+			best = probe;
+		} // if
+		if (keyedOn(attrs1, true) && table2.keyedOn(attrs2, true) && n1 + n2 + build1 + build2 < best)
+			method = LogicalPlan.JoinMethod.MERGE;
+		return method;
+	} // joinMethod
+
+	/************************************************************************************
+	 * Join this table and table2 on the given attributes with the given algorithm.
+	 * Index and merge joins fall back to a hash join if the indexes turn out not to
+	 * hold every tuple (duplicate key values).
+	 *
+	 * @param attrs1 the join attributes of this table
+	 * @param attrs2 the join attributes of table2
+	 * @param table2 the rhs table
+	 * @param method the join method (AUTO to choose it with joinMethod)
+	 * @return a table with tuples satisfying the equality predicate, or null on error
+	 */
+	Table equiJoin(String[] attrs1, String[] attrs2, Table table2, LogicalPlan.JoinMethod method) {
+		if (method == LogicalPlan.JoinMethod.AUTO)
+			method = joinMethod(attrs1, attrs2, table2);
+		var cols1 = match(attrs1);
+		var cols2 = table2.match(attrs2);
+
+		List<Comparable[]> rows;
+		try {
+			if (!joinable(cols1, table2, cols2)) {
+				rows = new ArrayList<>(); // values of different classes are never equal
+			} else {
+				switch (method) {
+				case NESTED_LOOP:
+					rows = nestedRows(tuples, cols1, table2.tuples, cols2);
+					break;
+				case INDEX:
+					if (keyedOn(attrs1, false) && indexHoldsAll())
+						rows = probeIndex(attrs1, table2, attrs2, true);
+					else if (table2.keyedOn(attrs2, false) && table2.indexHoldsAll())
+						rows = table2.probeIndex(attrs2, this, attrs1, false);
+					else
+						rows = hashRows(tuples, cols1, table2.tuples, cols2);
+					break;
+				case MERGE:
+					if (keyedOn(attrs1, true) && table2.keyedOn(attrs2, true) && indexHoldsAll() && table2.indexHoldsAll())
+						rows = mergeRows(table2);
+					else
+						rows = hashRows(tuples, cols1, table2.tuples, cols2);
+					break;
+				case GRACE_HASH:
+					rows = graceRows(cols1, table2, cols2);
+					break;
+				default:
+					rows = hashRows(tuples, cols1, table2.tuples, cols2);
+				} // switch
+			} // if
+		} catch (IOException ex) {
+			out.println("equiJoin: IO Exception");
+			ex.printStackTrace();
+			return null;
+		} // try
+
+		var attrs = ArrayUtil.concat(attribute, table2.attribute);
+		for (int j = 0; j < table2.attribute.length; j++)
+			if (Arrays.asList(attribute).contains(table2.attribute[j]))
+				attrs[attribute.length + j] = table2.attribute[j] + "2";
+		return new Table(name + count++, attrs, ArrayUtil.concat(domain, table2.domain), key, rows);
+	} // equiJoin
+
+	/************************************************************************************
+	 * Determine whether tuples of this table and table2 can match on the given join
+	 * columns, i.e., each pair of columns has the same domain. Values of different
+	 * classes (e.g., Integer and Long) are never equal, and comparing them (as the
+	 * keys of the join algorithms do) throws ClassCastException.
+	 *
+	 * @param cols1  the join columns of this table
+	 * @param table2 the rhs table
+	 * @param cols2  the join columns of table2
+	 * @return whether the join columns have the same domains
+	 */
+	private boolean joinable(int[] cols1, Table table2, int[] cols2) {
+		for (int i = 0; i < cols1.length; i++) {
+			if (domain[cols1[i]] != table2.domain[cols2[i]]) {
+				out.println("equiJoin: join attributes " + attribute[cols1[i]] + " and " + table2.attribute[cols2[i]]
+						+ " have different domains, so no tuples match");
+				return false;
+			} // if
+		} // for
+		return true;
+	} // joinable
+
+	/************************************************************************************
+	 * Determine whether this table has all of the given attributes.
+	 *
+	 * @param attrs the attribute names
+	 * @return whether every one is an attribute of this table
+	 */
+	private boolean hasAll(String[] attrs) {
+		for (var a : attrs)
+			if (col(a) < 0)
+				return false;
+		return true;
+	} // hasAll
+
+	/************************************************************************************
+	 * Determine whether the given attributes are exactly this table's key and its key
+	 * index (built or not) may hold every tuple. For an ordered use, the attributes
+	 * must be in key order and the index a B+Tree.
+	 *
+	 * @param attrs   the join attributes
+	 * @param ordered whether the index must deliver the tuples in attribute order
+	 * @return whether the key index can be used for the attributes
+	 */
+	private boolean keyedOn(String[] attrs, boolean ordered) {
+		if (mType == MapType.NO_MAP || (ordered && mType != MapType.BPTREE_MAP))
+			return false;
+		var idx = index;
+		if (idx != null && idx.size() != tuples.size()) // duplicate key values
+			return false;
+		return ordered ? Arrays.equals(attrs, key)
+				: attrs.length == key.length && new HashSet<>(Arrays.asList(attrs)).equals(new HashSet<>(Arrays.asList(key)));
+	} // keyedOn
+
+	/************************************************************************************
+	 * Determine whether the key index (building it if need be) holds every tuple,
+	 * i.e., no two tuples have the same key value.
+	 *
+	 * @return whether the index holds all the tuples
+	 */
+	private boolean indexHoldsAll() {
+		return index().size() == tuples.size();
+	} // indexHoldsAll
+
+	/************************************************************************************
+	 * Join by looking up the tuples of the probe table in this table's key index, as
+	 * one batch (see lookupAll).
+	 *
+	 * @param attrs      this table's join attributes (its key, in any order)
+	 * @param probe      the table whose tuples are looked up
+	 * @param probeAttrs the probe table's join attributes
+	 * @param left       whether this table's tuples go first in the joined tuples
+	 * @return the joined tuples, in probe table order
+	 */
+	private List<Comparable[]> probeIndex(String[] attrs, Table probe, String[] probeAttrs, boolean left) {
+		var cols = new int[key.length]; // probe columns, in key order
+		for (int j = 0; j < key.length; j++)
+			cols[j] = probe.col(probeAttrs[Arrays.asList(attrs).indexOf(key[j])]);
+		var keyVals = new ArrayList<KeyType>(probe.tuples.size());
+		for (Comparable[] t : probe.tuples)
+			keyVals.add(keyOf(t, cols));
+		var matches = lookupAll(keyVals);
+		var rows = new ArrayList<Comparable[]>();
+		for (int i = 0; i < matches.length; i++) {
+			var t = probe.tuples.get(i);
+			if (matches[i] != null)
+				rows.add(left ? ArrayUtil.concat(matches[i], t) : ArrayUtil.concat(t, matches[i]));
+		} // for
+		return rows;
+	} // probeIndex
+
+	/************************************************************************************
+	 * Join by merging the leaf levels of this table's and table2's B+Tree key indexes,
+	 * which deliver both inputs in join attribute order. Both keys are unique, so each
+	 * tuple matches at most one.
+	 *
+	 * @param table2 the rhs table
+	 * @return the joined tuples, in key order
+	 */
+	@SuppressWarnings("unchecked")
+	private List<Comparable[]> mergeRows(Table table2) {
+		var it1 = ((BpTreeMap<KeyType, Comparable[]>) index()).entryIterator();
+		var it2 = ((BpTreeMap<KeyType, Comparable[]>) table2.index()).entryIterator();
+		var rows = new ArrayList<Comparable[]>();
+		var e1 = it1.hasNext() ? it1.next() : null;
+		var e2 = it2.hasNext() ? it2.next() : null;
+		while (e1 != null && e2 != null) {
+			var c = e1.getKey().compareTo(e2.getKey());
+			if (c == 0)
+				rows.add(ArrayUtil.concat(e1.getValue(), e2.getValue()));
+			if (c <= 0)
+				e1 = it1.hasNext() ? it1.next() : null;
+			if (c >= 0)
+				e2 = it2.hasNext() ? it2.next() : null;
+		} // while
+		return rows;
+	} // mergeRows
+
+	/************************************************************************************
+	 * Join two lists of tuples by comparing every pair (for tiny inputs).
+	 *
+	 * @param left  the lhs tuples
+	 * @param cols1 their join columns
+	 * @param right the rhs tuples
+	 * @param cols2 their join columns
+	 * @return the joined tuples
+	 */
+	private static List<Comparable[]> nestedRows(List<Comparable[]> left, int[] cols1, List<Comparable[]> right,
+			int[] cols2) {
+		var rows = new ArrayList<Comparable[]>();
+		for (Comparable[] t : left)
+			for (Comparable[] t2 : right)
+				if (keyOf(t, cols1).equals(keyOf(t2, cols2)))
+					rows.add(ArrayUtil.concat(t, t2));
+		return rows;
+	} // nestedRows
+
+	/************************************************************************************
+	 * Join two lists of tuples by building a hash table on the smaller one and probing
+	 * it with the other (duplicates on either side are kept).
+	 *
+	 * @param left  the lhs tuples
+	 * @param cols1 their join columns
+	 * @param right the rhs tuples
+	 * @param cols2 their join columns
+	 * @return the joined tuples, in probe order
+	 */
+	private static List<Comparable[]> hashRows(List<Comparable[]> left, int[] cols1, List<Comparable[]> right,
+			int[] cols2) {
+		var buildLeft = left.size() < right.size();
+		var build = buildLeft ? left : right;
+		var buildCols = buildLeft ? cols1 : cols2;
+		var probe = buildLeft ? right : left;
+		var probeCols = buildLeft ? cols2 : cols1;
+
+		var table = new HashMap<KeyType, List<Comparable[]>>(2 * build.size());
+		for (Comparable[] t : build)
+			table.computeIfAbsent(keyOf(t, buildCols), k -> new ArrayList<>()).add(t);
+		var rows = new ArrayList<Comparable[]>();
+		for (Comparable[] t : probe) {
+			var matches = table.get(keyOf(t, probeCols));
+			if (matches != null)
+				for (Comparable[] m : matches)
+					rows.add(buildLeft ? ArrayUtil.concat(m, t) : ArrayUtil.concat(t, m));
+		} // for
+		return rows;
+	} // hashRows
+
+	/************************************************************************************
+	 * Join this table and table2 with a Grace hash join: both are partitioned by the
+	 * hash of their join columns into spill files, and then each pair of partitions
+	 * (whose build side should fit in memory) is hash joined.
+	 *
+	 * @param cols1  the join columns of this table
+	 * @param table2 the rhs table
+	 * @param cols2  the join columns of table2
+	 * @return the joined tuples, grouped by partition
+	 * @throws IOException if a spill file cannot be written or read
+	 */
+	private List<Comparable[]> graceRows(int[] cols1, Table table2, int[] cols2) throws IOException {
+		var rows = new ArrayList<Comparable[]>();
+		graceJoin(tuples.iterator(), tuples.size(), cols1, table2.tuples.iterator(), table2.tuples.size(), cols2,
+				table2.name, 0, rows);
+		return rows;
+	} // graceRows
+
+	/************************************************************************************
+	 * Add the joined tuples of the two inputs to rows (see graceRows), partitioning
+	 * both inputs by hash into spill files and hash joining each pair of partitions. A
+	 * pair whose smaller partition still exceeds the memory budget is partitioned
+	 * again on other bits of the hash (unless that cannot split it, i.e., all their
+	 * tuples fell into one pair, or the hash bits are used up). A pair with an empty
+	 * partition is skipped.
+	 *
+	 * @param left  the lhs tuples
+	 * @param n1    the number of lhs tuples
+	 * @param cols1 their join columns
+	 * @param right the rhs tuples
+	 * @param n2    the number of rhs tuples
+	 * @param cols2 their join columns
+	 * @param name2 the name of the rhs table (for naming its spill files)
+	 * @param level the number of times these tuples were partitioned before
+	 * @param rows  the joined tuples (added to)
+	 * @throws IOException if a spill file cannot be written or read
+	 */
+	private void graceJoin(Iterator<Comparable[]> left, int n1, int[] cols1, Iterator<Comparable[]> right, int n2,
+			int[] cols2, String name2, int level, List<Comparable[]> rows) throws IOException {
+		var parts1 = new SpillFile[SPILL_PARTS];
+		var parts2 = new SpillFile[SPILL_PARTS];
+		try {
+			for (int i = 0; i < SPILL_PARTS; i++) {
+				parts1[i] = new SpillFile(name + "_join");
+				parts2[i] = new SpillFile(name2 + "_join");
+			} // for
+			while (left.hasNext()) {
+				var t = left.next();
+				parts1[partition(keyOf(t, cols1), level)].write(t);
+			} // while
+			while (right.hasNext()) {
+				var t = right.next();
+				parts2[partition(keyOf(t, cols2), level)].write(t);
+			} // while
+
+			for (int i = 0; i < SPILL_PARTS; i++) {
+				int m1 = parts1[i].size(), m2 = parts2[i].size();
+				if (m1 > 0 && m2 > 0) {
+					if (Math.min(m1, m2) > memoryRows && m1 + m2 < n1 + n2 && level < 7)
+						graceJoin(parts1[i].read(), m1, cols1, parts2[i].read(), m2, cols2, name2, level + 1, rows);
+					else
+						rows.addAll(hashRows(readAll(parts1[i]), cols1, readAll(parts2[i]), cols2));
+				} // if
+				parts1[i].delete();
+				parts2[i].delete();
+			} // for
+		} finally {
+			for (int i = 0; i < SPILL_PARTS; i++) {
+				if (parts1[i] != null)
+					parts1[i].delete();
+				if (parts2[i] != null)
+					parts2[i].delete();
+			} // for
+		} // try
+	} // graceJoin
+
+	/************************************************************************************
+	 * Return the spill partition of a join key. The hash code is mixed first, so the
+	 * keys of one partition still spread over a hash table's buckets, and each level
+	 * of re-partitioning uses other bits of the mixed hash.
+	 *
+	 * @param k     the join key
+	 * @param level the number of times the key's tuple was partitioned before
+	 * @return the partition number
+	 */
+	private static int partition(KeyType k, int level) {
+		return (int) Long.remainderUnsigned(Long.rotateRight(BloomFilter.mix(k.hashCode()), 8 * level), SPILL_PARTS);
+	} // partition
+
+	/************************************************************************************
+	 * Read all the tuples of a spill file into memory.
+	 *
+	 * @param part the spill file
+	 * @return its tuples
+	 * @throws IOException if the file cannot be read
+	 */
+	private static List<Comparable[]> readAll(SpillFile part) throws IOException {
+		var rows = new ArrayList<Comparable[]>(part.size());
+		for (var it = part.read(); it.hasNext();)
+			rows.add(it.next());
+		return rows;
+	} // readAll
+
+	/************************************************************************************
+	 * Count the occurrences of each distinct tuple (by value) of the given table.
+	 *
+	 * @param table2 the table whose tuples are counted
+	 * @return a map from tuple (as a KeyType) to its number of occurrences
+	 */
+	private static Map<KeyType, Integer> countTuples(Table table2) {
+		var counts = new HashMap<KeyType, Integer>(2 * table2.tuples.size());
+		for (Comparable[] t : table2.tuples)
+			counts.merge(new KeyType(t), 1, Integer::sum);
+		return counts;
+	} // countTuples
+
 	private String[] getCommonAttributes(Table table2) {
 		List<String> commonAttributes = new ArrayList<String>();
 		var l_attrs = attribute;
@@ -771,7 +2103,9 @@ public class Table implements Serializable {
 	} // col
 
 	/************************************************************************************
-	 * Insert a tuple to the table.
+	 * Insert a tuple to the table. For a logged table, the tuple is logged before it
+	 * is added; should the log then fail to make it durable, the tuple is taken out
+	 * again (see discardUnlogged) and the insert fails.
 	 *
 	 * #usage movie.insert ("'Star_Wars'", 1977, 124, "T", "Fox", 12345)
 	 *
@@ -781,20 +2115,187 @@ public class Table implements Serializable {
 	public boolean insert(Comparable[] tup) {
 		out.println("DML> insert into " + name + " values ( " + Arrays.toString(tup) + " )");
 
+		if (readOnly) {
+			out.println("insert: table " + name + " is read-only");
+			return false;
+		} // if
 		if (typeCheck(tup)) {
-			tuples.add(tup);
-			var keyVal = new Comparable[key.length];
-			var cols = match(key);
-			for (int j = 0; j < keyVal.length; j++)
-				keyVal[j] = tup[cols[j]];
-			if (mType != MapType.NO_MAP)
-				index.put(new KeyType(keyVal), tup);
-			return true;
+			try {
+				long lsn;
+				long v;
+				synchronized (this) { // log first: a tuple that cannot be logged is not added
+					lsn = (wal == null) ? 0 : wal.append(WriteAheadLog.INSERT, tup);
+					v = add(tup);
+				} // synchronized
+				if (wal != null)
+					wal.commit(lsn); // group commit with concurrent inserters
+				inserted(tup, v);
+				return true;
+			} catch (IOException ex) {
+				out.println("insert: IO Exception");
+				ex.printStackTrace();
+				discardUnlogged();
+				return false;
+			} // try
 		} else {
 			return false;
 		} // if
 	} // insert
 
+	/************************************************************************************
+	 * Insert a batch of tuples into the table. When the table is logged, the batch
+	 * is logged as a whole before any tuple is added, and made durable with a single
+	 * commit (one fsync) rather than one per tuple. Should logging fail, none of the
+	 * tuples is inserted.
+	 *
+	 * @param tups the tuples to insert
+	 * @return the number of tuples inserted (those passing the type check, or 0 if
+	 *         the insert failed)
+	 */
+	public int insertAll(List<Comparable[]> tups) {
+		out.println("DML> insert into " + name + " values ( " + tups.size() + " tuples )");
+
+		if (readOnly) {
+			out.println("insertAll: table " + name + " is read-only");
+			return 0;
+		} // if
+		var added = new ArrayList<Comparable[]>();
+		for (var tup : tups)
+			if (typeCheck(tup))
+				added.add(tup);
+		long first = 0; // the version after adding the first tuple
+		try {
+			long lsn = 0;
+			synchronized (this) {
+				if (wal != null && !added.isEmpty())
+					lsn = wal.appendAll(WriteAheadLog.INSERT, added); // all or none
+				for (var tup : added) {
+					var v = add(tup);
+					if (first == 0)
+						first = v;
+				} // for
+			} // synchronized
+			if (wal != null && !added.isEmpty())
+				wal.commit(lsn);
+		} catch (IOException ex) {
+			out.println("insertAll: IO Exception");
+			ex.printStackTrace();
+			discardUnlogged();
+			return 0;
+		} // try
+		for (int i = 0; i < added.size(); i++)
+			inserted(added.get(i), first + i);
+		return added.size();
+	} // insertAll
+
+	/************************************************************************************
+	 * After the write-ahead log has failed, take out the tuples whose records it
+	 * dropped (see WriteAheadLog.discard): they were added but will never be durable,
+	 * and their inserts fail. Since each record is appended together with the add of
+	 * its tuple and the failed log takes no more records, they are the last tuples
+	 * added. The derived structures (index, filters, encodings) are rebuilt on next
+	 * use and the statistics, if kept, are recomputed.
+	 */
+	private synchronized void discardUnlogged() {
+		var n = (wal == null) ? 0 : wal.discard();
+		if (n == 0)
+			return;
+		out.println("insert: dropping " + n + " tuples of " + name + " that the log lost");
+		tuples.subList(tuples.size() - n, tuples.size()).clear();
+		version++;
+		index = null;
+		keyFilter = null;
+		zoneMap = null;
+		encoded = null;
+		if (stats != null)
+			analyze();
+	} // discardUnlogged
+
+	/************************************************************************************
+	 * Add a listener to be told of each tuple inserted into the table (by insert,
+	 * insertAll or append), after the insert.
+	 *
+	 * @param listener the listener
+	 */
+	synchronized void addListener(InsertListener listener) {
+		if (listeners == null)
+			listeners = new CopyOnWriteArrayList<>();
+		listeners.add(listener);
+	} // addListener
+
+	/************************************************************************************
+	 * Remove a listener added by addListener.
+	 *
+	 * @param listener the listener
+	 */
+	synchronized void removeListener(InsertListener listener) {
+		if (listeners != null)
+			listeners.remove(listener);
+	} // removeListener
+
+	/************************************************************************************
+	 * Add a tuple derived by the system (e.g., by a materialized view) to the table,
+	 * even if it is read-only, without type checking or logging it.
+	 *
+	 * @param tup the tuple to add
+	 */
+	void append(Comparable[] tup) {
+		inserted(tup, add(tup));
+	} // append
+
+	/************************************************************************************
+	 * Tell the listeners that a tuple was inserted. The tuple is already in the table
+	 * (and logged), so a listener that fails is reported and skipped rather than
+	 * failing the insert or keeping the other listeners from being told.
+	 *
+	 * @param tup     the tuple inserted
+	 * @param version the table's version just after it was added
+	 */
+	private void inserted(Comparable[] tup, long version) {
+		var ls = listeners;
+		if (ls == null)
+			return;
+		for (var listener : ls) {
+			try {
+				listener.inserted(tup, version);
+			} catch (RuntimeException ex) {
+				out.println("insert: listener on " + name + " failed: " + ex);
+			} // try
+		} // for
+	} // inserted
+
+	/************************************************************************************
+	 * Recompute the statistics of every column from the tuples: counts, minimum and
+	 * maximum, distinct value sketch and equi-depth histogram. Until the next
+	 * analyze, inserts keep them up to date incrementally.
+	 */
+	public synchronized void analyze() {
+		out.println("DDL> analyze " + name);
+
+		var fresh = new ColumnStats[attribute.length];
+		for (int j = 0; j < fresh.length; j++)
+			fresh[j] = new ColumnStats(tuples, j);
+		stats = fresh;
+	} // analyze
+
+	/************************************************************************************
+	 * Return the statistics of the given column, analyzing the table first if it has
+	 * no statistics yet.
+	 *
+	 * #usage movie.statistics ("year").selectivity ("<", 1980)
+	 *
+	 * @param attr the attribute (column)
+	 * @return the column statistics, or null if there is no such attribute
+	 */
+	public synchronized ColumnStats statistics(String attr) {
+		var j = col(attr);
+		if (j < 0)
+			return null;
+		if (stats == null)
+			analyze();
+		return stats[j];
+	} // statistics
+
 	/************************************************************************************
 	 * Get the name of the table.
 	 *
@@ -804,6 +2305,110 @@ public class Table implements Serializable {
 		return name;
 	} // getName
 
+	/************************************************************************************
+	 * Get the attribute names of the table.
+	 *
+	 * @return the attribute names
+	 */
+	String[] getAttributes() {
+		return attribute;
+	} // getAttributes
+
+	/************************************************************************************
+	 * Get the key of the table.
+	 *
+	 * @return the key attributes
+	 */
+	String[] getKey() {
+		return key;
+	} // getKey
+
+	/************************************************************************************
+	 * Get the version of the table: the number of tuples added since it was created
+	 * or loaded.
+	 *
+	 * @return the version
+	 */
+	long version() {
+		return version;
+	} // version
+
+	/************************************************************************************
+	 * Make the table read-only: later inserts are refused.
+	 */
+	void freeze() {
+		readOnly = true;
+	} // freeze
+
+	/************************************************************************************
+	 * Get the tuples of the table (not a copy).
+	 *
+	 * @return the tuples
+	 */
+	List<Comparable[]> getTuples() {
+		return tuples;
+	} // getTuples
+
+	/************************************************************************************
+	 * Get the key index, provided it holds every tuple (no two tuples have the same
+	 * key value), building it if need be.
+	 *
+	 * @return the key index, or null if there is none or it misses tuples
+	 */
+	Map<KeyType, Comparable[]> uniqueIndex() {
+		return (keyedOn(key, false) && indexHoldsAll()) ? index() : null;
+	} // uniqueIndex
+
+	/************************************************************************************
+	 * Get the domains of the table's attributes.
+	 *
+	 * @return the attribute domains
+	 */
+	Class[] getDomain() {
+		return domain;
+	} // getDomain
+
+	/************************************************************************************
+	 * Get the number of tuples in the table.
+	 *
+	 * @return the number of tuples
+	 */
+	int size() {
+		return tuples.size();
+	} // size
+
+	/************************************************************************************
+	 * Determine whether the key index has been built (so an index join or key
+	 * selection does not have to build it first).
+	 *
+	 * @return whether the index is built
+	 */
+	boolean isIndexed() {
+		return index != null;
+	} // isIndexed
+
+	/************************************************************************************
+	 * Rearrange and rename the columns of this table, as the query optimizer needs
+	 * after reordering joins. When the given key is not among the new attributes,
+	 * duplicate tuples are eliminated (as project does).
+	 *
+	 * @param cols   the column positions to keep, in their new order
+	 * @param names  the new attribute names
+	 * @param newKey the key of the result, in new attribute names
+	 * @return a table with the rearranged columns
+	 */
+	Table arrange(int[] cols, String[] names, String[] newKey) {
+		var keyKept = Arrays.asList(names).containsAll(Arrays.asList(newKey));
+		List<Comparable[]> rows = new ArrayList<>();
+		var seen = keyKept ? null : new HashSet<KeyType>();
+		for (Comparable[] t : tuples) {
+			var tup = pick(t, cols);
+			if (keyKept || seen.add(new KeyType(tup)))
+				rows.add(tup);
+		} // for
+		return new Table(name + count++, names, extractDom(cols, domain), keyKept ? newKey : names, rows);
+	} // arrange
+
 	/************************************************************************************
 	 * Print this table.
 	 */
@@ -840,7 +2445,7 @@ public class Table implements Serializable {
 		out.println("\n Index for " + name);
 		out.println("-------------------");
 		if (mType != MapType.NO_MAP) {
-			for (Map.Entry<KeyType, Comparable[]> e : index.entrySet()) {
+			for (Map.Entry<KeyType, Comparable[]> e : index().entrySet()) {
 				out.println(e.getKey() + " -> " + Arrays.toString(e.getValue()));
 			} // for
 		} // if
@@ -848,7 +2453,9 @@ public class Table implements Serializable {
 	} // printIndex
 
 	/************************************************************************************
-	 * Load the table with the given name into memory.
+	 * Load the table with the given name into memory. The index is not rebuilt
+	 * here: it is reopened from the table's index file on first use, provided the
+	 * index file matches the checksum of the table file just read.
 	 *
 	 * @param name the name of the table to load
 	 * @return table with the given name into memory
@@ -856,9 +2463,15 @@ public class Table implements Serializable {
 	public static Table load(String name) {
 		Table tab = null;
 		try {
-			ObjectInputStream ois = new ObjectInputStream(new FileInputStream(DIR + name + EXT));
+			var cis = new CheckedInputStream(new BufferedInputStream(new FileInputStream(DIR + name + EXT)),
+					new CRC32());
+			ObjectInputStream ois = new ObjectInputStream(cis);
 			tab = (Table) ois.readObject();
+			while (cis.read() != -1)
+				; // include any trailing bytes in the checksum
 			ois.close();
+			tab.checksum = cis.getChecksum().getValue();
+			tab.loadedRows = tab.tuples.size();
 		} catch (IOException ex) {
 			out.println("load: IO Exception");
 			ex.printStackTrace();
@@ -870,17 +2483,450 @@ public class Table implements Serializable {
 	} // load
 
 	/************************************************************************************
-	 * Save this table in a file.
-	 * 
-	 * public void save () { try { var oos = new ObjectOutputStream (new
-	 * FileOutputStream (DIR + name + EXT)); oos.writeObject (this); oos.close (); }
-	 * catch (IOException ex) { out.println ("save: IO Exception");
-	 * ex.printStackTrace (); } // try } // save
+	 * Save this table in a file, along with its index in a separate index file.
+	 * For a logged table, the LSN of the last log record is saved with it so that
+	 * recovery only replays newer records. Saves and checkpoints of a table run one
+	 * at a time.
+	 */
+	public void save() {
+		synchronized (fileLock()) {
+			synchronized (this) {
+				try {
+					if (wal != null)
+						checkpointLsn = wal.lastLsn(); // all records so far are in the table file
+					writeFiles();
+				} catch (IOException ex) {
+					out.println("save: IO Exception");
+					ex.printStackTrace();
+				} // try
+			} // synchronized
+		} // synchronized
+	} // save
+
+	/************************************************************************************
+	 * Return the lock serializing the saves and checkpoints of this table. It is
+	 * always taken before the table's own lock.
+	 *
+	 * @return the lock for this table's files
+	 */
+	private Object fileLock() {
+		return fileLocks.computeIfAbsent(name, n -> new Object());
+	} // fileLock
+
+	/************************************************************************************
+	 * Take a fuzzy checkpoint of this logged table. Only a brief critical section
+	 * blocks inserts: it rotates the write-ahead log and records the number of rows
+	 * (and copies the column statistics, whose size does not depend on it). Since
+	 * rows are only appended, those rows are then copied in chunks, taking the lock
+	 * per chunk, so inserts are never blocked for a whole table copy. The table file
+	 * and index snapshot are then written while inserts continue, after which the
+	 * rotated log is deleted, so recovery only replays the records logged since this
+	 * checkpoint. An unlogged table is just saved. Saves and checkpoints of a table
+	 * run one at a time (from the log rotation through the deletion of the rotated
+	 * logs), so a checkpoint never installs a table file older than the last one.
+	 *
+	 * @return whether the checkpoint was written
+	 */
+	public boolean checkpoint() {
+		if (wal == null) {
+			save();
+			return true;
+		} // if
+
+		synchronized (fileLock()) {
+			return checkpointFiles();
+		} // synchronized
+	} // checkpoint
+
+	/************************************************************************************
+	 * Take the checkpoint of this logged table (see checkpoint), holding its file
+	 * lock.
+	 *
+	 * @return whether the checkpoint was written
 	 */
+	private boolean checkpointFiles() {
+		Table snapshot;
+		long lsn;
+		int rows;
+		try {
+			synchronized (this) {
+				lsn = wal.lastLsn();
+				if (lsn < checkpointLsn)
+					return false; // never go back to an older table file
+				wal.rotate(archive(name, lsn));
+				rows = tuples.size();
+				snapshot = new Table(name, attribute, domain, key, new ArrayList<>(rows));
+				snapshot.checkpointLsn = lsn;
+				if (stats != null) {
+					snapshot.stats = new ColumnStats[stats.length];
+					for (int j = 0; j < stats.length; j++)
+						snapshot.stats[j] = new ColumnStats(stats[j]);
+				} // if
+			} // synchronized
+			for (int from = 0; from < rows; from += CHECKPOINT_ROWS) {
+				synchronized (this) {
+					snapshot.tuples.addAll(tuples.subList(from, Math.min(rows, from + CHECKPOINT_ROWS)));
+				} // synchronized
+			} // for
+			snapshot.writeFiles();
+		} catch (IOException ex) {
+			out.println("checkpoint: IO Exception");
+			ex.printStackTrace();
+			return false;
+		} // try
+
+		synchronized (this) {
+			checkpointLsn = lsn;
+		} // synchronized
+		deleteArchives(name, lsn);
+		out.println("DDL> checkpoint table " + name + " at LSN " + lsn);
+		return true;
+	} // checkpointFiles
+
+	/************************************************************************************
+	 * Open a logged table: load it from its table file (or create it empty if it
+	 * was never saved), replay the tail of its write-ahead log after the last
+	 * checkpoint, and log all further inserts to the write-ahead log in the store
+	 * directory.
+	 *
+	 * #usage Table.open ("movie", "title year length genre studioName producerNo",
+	 * "String Integer Integer String String Integer", "title year")
+	 *
+	 * @param name       the name of the relation
+	 * @param attributes the string containing attributes names
+	 * @param domains    the string containing attribute domains (data types)
+	 * @param key        the primary key
+	 * @return the recovered table, or null if the log cannot be opened
+	 */
+	public static Table open(String name, String attributes, String domains, String key) {
+		var tab = new File(DIR + name + EXT).exists() ? load(name) : new Table(name, attributes, domains, key);
+		if (tab == null)
+			return null;
+		new File(DIR).mkdirs();
+		try {
+			var logFile = new File(DIR + name + LOG);
+			var lastLsn = tab.checkpointLsn;
+			for (var file : archives(name)) // logs rotated by an unfinished checkpoint
+				lastLsn = Math.max(lastLsn, tab.replay(file));
+			lastLsn = Math.max(lastLsn, tab.replay(logFile));
+			deleteArchives(name, tab.checkpointLsn);
+			out.println("DDL> open table " + name + " (replayed log up to LSN " + lastLsn + ")");
+			tab.wal = new WriteAheadLog(logFile, lastLsn);
+		} catch (IOException ex) {
+			out.println("open: IO Exception");
+			ex.printStackTrace();
+			return null;
+		} // try
+		return tab;
+	} // open
+
+	/************************************************************************************
+	 * Close this table's write-ahead log (if any), making all records durable.
+	 */
+	public void close() {
+		if (wal == null)
+			return;
+		try {
+			wal.close();
+		} catch (IOException ex) {
+			out.println("close: IO Exception");
+			ex.printStackTrace();
+		} // try
+		wal = null;
+	} // close
+
 	// ----------------------------------------------------------------------------------
 	// Private Methods
 	// ----------------------------------------------------------------------------------
 
+	/************************************************************************************
+	 * Return the index, building it on first use. A table loaded from disk reopens
+	 * its index file if it is still valid, adding any tuples inserted or replayed
+	 * from the log since; otherwise (or for tables constructed from a list of
+	 * tuples) the index is rebuilt, computing the keys in parallel. The index file
+	 * holds the key order of the rows, not the tree's nodes, so reopening still
+	 * computes each row's key, but skips the sort; a B+Tree is then loaded
+	 * bottom-up from the sorted rows rather than by a put per row.
+	 *
+	 * @return the index (null for NO_MAP)
+	 */
+	private synchronized Map<KeyType, Comparable[]> index() {
+		if (index == null && mType != MapType.NO_MAP) {
+			var cols = match(key);
+			int[] rows = (checksum == 0) ? null
+					: IndexFile.read(new File(DIR + name + IDX), checksum, loadedRows, cols);
+			var map = makeMap();
+			if (rows == null) { // missing or stale: rebuild
+				var keys = new KeyType[tuples.size()];
+				IntStream.range(0, keys.length).parallel().forEach(i -> keys[i] = keyOf(tuples.get(i), cols));
+				Integer[] order = IntStream.range(0, keys.length).boxed().toArray(Integer[]::new);
+				if (mType == MapType.BPTREE_MAP || mType == MapType.TREE_MAP)
+					Arrays.parallelSort(order, (i, j) -> keys[i].compareTo(keys[j])); // stable, so ties keep
+																						// insertion order
+				if (map instanceof BpTreeMap) {
+					var sorted = new ArrayList<KeyType>(order.length);
+					var values = new ArrayList<Comparable[]>(order.length);
+					for (var i : order) {
+						sorted.add(keys[i]);
+						values.add(tuples.get(i));
+					} // for
+					((BpTreeMap<KeyType, Comparable[]>) map).load(sorted, values);
+				} else {
+					for (var i : order)
+						map.put(keys[i], tuples.get(i));
+				} // if
+			} else {
+				if (map instanceof BpTreeMap) {
+					var keys = new KeyType[rows.length];
+					IntStream.range(0, keys.length).parallel().forEach(j -> keys[j] = keyOf(tuples.get(rows[j]), cols));
+					var values = new ArrayList<Comparable[]>(rows.length);
+					for (var i : rows)
+						values.add(tuples.get(i));
+					((BpTreeMap<KeyType, Comparable[]>) map).load(Arrays.asList(keys), values);
+				} else {
+					for (var i : rows)
+						map.put(keyOf(tuples.get(i), cols), tuples.get(i));
+				} // if
+				for (int i = loadedRows; i < tuples.size(); i++) // inserted or replayed since load
+					map.put(keyOf(tuples.get(i), cols), tuples.get(i));
+			} // if
+			index = map;
+		} // if
+		return index;
+	} // index
+
+	/************************************************************************************
+	 * Return the row numbers of the tuples held in the index, in key order.
+	 *
+	 * @return the indexed row numbers
+	 */
+	private int[] indexRows() {
+		var map = index();
+		var cols = match(key);
+		var keys = new KeyType[tuples.size()];
+		var rows = new ArrayList<Integer>();
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = keyOf(tuples.get(i), cols);
+			if (map.get(keys[i]) == tuples.get(i))
+				rows.add(i);
+		} // for
+		rows.sort((i, j) -> keys[i].compareTo(keys[j]));
+		return rows.stream().mapToInt(Integer::intValue).toArray();
+	} // indexRows
+
+	/************************************************************************************
+	 * Write this table to its table file (atomically, via a temporary file that is
+	 * synced and renamed, and then syncing the directory so the rename is durable)
+	 * and then its index to the index file.
+	 *
+	 * @throws IOException if the files cannot be written
+	 */
+	private void writeFiles() throws IOException {
+		new File(DIR).mkdirs();
+		var tmp = File.createTempFile(name + EXT, ".tmp", new File(DIR)); // unique, should writes ever overlap
+		var fos = new FileOutputStream(tmp);
+		var cos = new CheckedOutputStream(new BufferedOutputStream(fos), new CRC32());
+		try {
+			try (var oos = new ObjectOutputStream(cos)) {
+				oos.writeObject(this);
+				oos.flush();
+				fos.getFD().sync();
+			} // try
+			Files.move(tmp.toPath(), new File(DIR + name + EXT).toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException ex) {
+			tmp.delete();
+			throw ex;
+		} // try
+		WriteAheadLog.syncDirectory(new File(DIR));
+		var rows = (mType != MapType.NO_MAP) ? indexRows() : null; // before the checksum, so the old index
+																	// file is not read as this table's
+		checksum = cos.getChecksum().getValue();
+		if (rows != null)
+			IndexFile.write(new File(DIR + name + IDX), checksum, tuples.size(), match(key), rows);
+	} // writeFiles
+
+	/************************************************************************************
+	 * Replay the insert records in the given log file that are newer than this
+	 * table's checkpoint.
+	 *
+	 * @param file the log file to replay
+	 * @return the last LSN in the log file
+	 * @throws IOException if the log file cannot be read
+	 */
+	private long replay(File file) throws IOException {
+		return WriteAheadLog.replay(file, checkpointLsn, (type, tup) -> {
+			if (type == WriteAheadLog.INSERT)
+				add(tup);
+		});
+	} // replay
+
+	/************************************************************************************
+	 * Return the file a checkpoint rotates the log into, named after the last LSN
+	 * it holds.
+	 *
+	 * @param name the name of the table
+	 * @param lsn  the last LSN in the rotated log
+	 * @return the archive file
+	 */
+	private static File archive(String name, long lsn) {
+		return new File(DIR + name + LOG + "." + lsn);
+	} // archive
+
+	/************************************************************************************
+	 * Return the rotated log files of the given table, oldest first.
+	 *
+	 * @param name the name of the table
+	 * @return the archive files in LSN order
+	 */
+	private static File[] archives(String name) {
+		var prefix = name + LOG + ".";
+		var files = new File(DIR).listFiles((dir, f) -> f.startsWith(prefix) && f.substring(prefix.length())
+				.chars().allMatch(Character::isDigit) && f.length() > prefix.length());
+		if (files == null)
+			return new File[0];
+		Arrays.sort(files, (f1, f2) -> Long.compare(Long.parseLong(f1.getName().substring(prefix.length())),
+				Long.parseLong(f2.getName().substring(prefix.length()))));
+		return files;
+	} // archives
+
+	/************************************************************************************
+	 * Delete the rotated log files whose records are all covered by a checkpoint.
+	 *
+	 * @param name the name of the table
+	 * @param lsn  the LSN of the checkpoint
+	 */
+	private static void deleteArchives(String name, long lsn) {
+		var prefix = name + LOG + ".";
+		for (var file : archives(name)) {
+			if (Long.parseLong(file.getName().substring(prefix.length())) <= lsn)
+				file.delete();
+		} // for
+	} // deleteArchives
+
+	/************************************************************************************
+	 * Add a (type checked) tuple to the table and, if built, to its index.
+	 *
+	 * @param tup the tuple to add
+	 * @return the table's version after adding it
+	 */
+	private synchronized long add(Comparable[] tup) {
+		if (dictionaries == null)
+			dictionaries = makeDictionaries();
+		for (int j = 0; j < tup.length; j++) {
+			if (dictionaries[j] != null) {
+				tup[j] = dictionaries[j].canonical(tup[j]);
+				if (dictionaries[j].size() > DICT_LIMIT && 2 * dictionaries[j].size() > tuples.size())
+					dictionaries[j] = null; // mostly distinct values: not worth encoding
+			} // if
+		} // for
+		tuples.add(tup);
+		version++;
+		if (zoneMap != null)
+			zoneMap.add(tuples.size() - 1, tup);
+		var keyVal = keyOf(tup, match(key));
+		if (keyFilter != null) {
+			if (keyFilter.isFull())
+				keyFilter = null; // rebuilt larger on next use
+			else
+				keyFilter.add(keyVal);
+		} // if
+		if (mType != MapType.NO_MAP && index != null) // otherwise picked up when built
+			index.put(keyVal, tup);
+		if (stats != null)
+			for (int j = 0; j < tup.length; j++)
+				stats[j].add(tup[j]);
+		return version;
+	} // add
+
+	/************************************************************************************
+	 * Determine whether a tuple with the given key value may be present, according to
+	 * the key's Bloom filter. The filter holds whole key values, so a key prefix
+	 * (which the B+Tree index matches by comparing only its values) always may be.
+	 *
+	 * @param keyVal the key value (or prefix)
+	 * @return false if no tuple has the key value
+	 */
+	private boolean mightContain(KeyType keyVal) {
+		return keyVal.size() != key.length || keyFilter().mightContain(keyVal);
+	} // mightContain
+
+	/************************************************************************************
+	 * Return the Bloom filter on the primary key, building it on first use.
+	 *
+	 * @return the key filter
+	 */
+	private synchronized BloomFilter keyFilter() {
+		if (keyFilter == null)
+			keyFilter = bloomFilter(key);
+		return keyFilter;
+	} // keyFilter
+
+	/************************************************************************************
+	 * Build a Bloom filter over the values of the given attributes of this table's
+	 * tuples, sized for twice the current number of tuples.
+	 *
+	 * @param attrs the attributes (e.g., join columns) to put in the filter
+	 * @return a Bloom filter containing a KeyType for each tuple
+	 */
+	private BloomFilter bloomFilter(String[] attrs) {
+		if (Arrays.equals(attrs, key) && keyFilter != null)
+			return keyFilter;
+		var cols = match(attrs);
+		var filter = new BloomFilter(2 * tuples.size());
+		for (var t : tuples)
+			filter.add(keyOf(t, cols));
+		return filter;
+	} // bloomFilter
+
+	/************************************************************************************
+	 * Return the zone map, building it from the tuples on first use. It is then
+	 * maintained by each insert.
+	 *
+	 * @return the zone map
+	 */
+	private synchronized ZoneMap zoneMap() {
+		if (zoneMap == null) {
+			var zones = new ZoneMap(attribute.length);
+			for (int i = 0; i < tuples.size(); i++)
+				zones.add(i, tuples.get(i));
+			zoneMap = zones;
+		} // if
+		return zoneMap;
+	} // zoneMap
+
+	/************************************************************************************
+	 * Make the dictionaries for the String and Character columns, seeding them with
+	 * the values of the tuples already in the table.
+	 *
+	 * @return the per-column dictionaries
+	 */
+	private ColumnDictionary[] makeDictionaries() {
+		var dicts = new ColumnDictionary[domain.length];
+		for (int j = 0; j < domain.length; j++) {
+			if (domain[j] == String.class || domain[j] == Character.class) {
+				dicts[j] = new ColumnDictionary();
+				for (var t : tuples)
+					t[j] = dicts[j].canonical(t[j]);
+			} // if
+		} // for
+		return dicts;
+	} // makeDictionaries
+
+	/************************************************************************************
+	 * Form the key of tuple t from the given key column positions.
+	 *
+	 * @param t    the tuple
+	 * @param cols the key column positions
+	 * @return the key of the tuple
+	 */
+	private static KeyType keyOf(Comparable[] t, int[] cols) {
+		var keyVal = new Comparable[cols.length];
+		for (int j = 0; j < cols.length; j++)
+			keyVal[j] = t[cols[j]];
+		return new KeyType(keyVal);
+	} // keyOf
+
 	/************************************************************************************
 	 * Determine whether the two tables (this and table2) are compatible, i.e., have
 	 * the same number of attributes each with the same corresponding domain.
@@ -0,0 +1,97 @@
+package main;
+/*****************************************************************************************
+ * @file  TupleCodec.java
+ *
+ * @author   John Miller
+ */
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/*****************************************************************************************
+ * The TupleCodec class provides a compact binary encoding of tuples for the files kept
+ * in the store directory (log records, spill files).  Each value is written as a one
+ * byte type tag followed by its value, covering the "java.lang" domains a table may
+ * have: Long, Integer, Short, Byte, Double, Float, Character and String.
+ */
+class TupleCodec
+{
+    /** Type tags for the supported domains
+     */
+    private static final byte NULL = 0, LONG = 1, INTEGER = 2, SHORT = 3, BYTE = 4,
+                              DOUBLE = 5, FLOAT = 6, CHARACTER = 7, STRING = 8;
+
+    /*************************************************************************************
+     * Write tuple t to the data output.
+     * @param dos  the data output to write to
+     * @param t    the tuple to write
+     * @throws IOException  if the write fails
+     */
+    static void write (DataOutput dos, Comparable [] t)
+           throws IOException
+    {
+        dos.writeShort (t.length);
+        for (var v : t) writeValue (dos, v);
+    } // write
+
+    /*************************************************************************************
+     * Read a tuple from the data input.
+     * @param dis  the data input to read from
+     * @return  the tuple read
+     * @throws IOException  if the read fails
+     */
+    static Comparable [] read (DataInput dis)
+           throws IOException
+    {
+        var t = new Comparable [dis.readShort ()];
+        for (int j = 0; j < t.length; j++) t [j] = readValue (dis);
+        return t;
+    } // read
+
+    /*************************************************************************************
+     * Write a single attribute value.
+     * @param dos  the data output to write to
+     * @param v    the value to write
+     * @throws IOException  if the write fails
+     */
+    static void writeValue (DataOutput dos, Comparable v)
+           throws IOException
+    {
+        if      (v == null)              { dos.writeByte (NULL); }
+        else if (v instanceof Integer)   { dos.writeByte (INTEGER);   dos.writeInt ((Integer) v); }
+        else if (v instanceof String)    { dos.writeByte (STRING);    dos.writeUTF ((String) v); }
+        else if (v instanceof Long)      { dos.writeByte (LONG);      dos.writeLong ((Long) v); }
+        else if (v instanceof Double)    { dos.writeByte (DOUBLE);    dos.writeDouble ((Double) v); }
+        else if (v instanceof Character) { dos.writeByte (CHARACTER); dos.writeChar ((Character) v); }
+        else if (v instanceof Short)     { dos.writeByte (SHORT);     dos.writeShort ((Short) v); }
+        else if (v instanceof Byte)      { dos.writeByte (BYTE);      dos.writeByte ((Byte) v); }
+        else if (v instanceof Float)     { dos.writeByte (FLOAT);     dos.writeFloat ((Float) v); }
+        else throw new IOException ("TupleCodec: unsupported domain " + v.getClass ());
+    } // writeValue
+
+    /*************************************************************************************
+     * Read a single attribute value.
+     * @param dis  the data input to read from
+     * @return  the value read
+     * @throws IOException  if the read fails
+     */
+    static Comparable readValue (DataInput dis)
+           throws IOException
+    {
+        var tag = dis.readByte ();
+        switch (tag) {
+        case NULL:      return null;
+        case INTEGER:   return dis.readInt ();
+        case STRING:    return dis.readUTF ();
+        case LONG:      return dis.readLong ();
+        case DOUBLE:    return dis.readDouble ();
+        case CHARACTER: return dis.readChar ();
+        case SHORT:     return dis.readShort ();
+        case BYTE:      return dis.readByte ();
+        case FLOAT:     return dis.readFloat ();
+        default:        throw new IOException ("TupleCodec: bad type tag " + tag);
+        } // switch
+    } // readValue
+
+} // TupleCodec class
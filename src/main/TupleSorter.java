@@ -0,0 +1,241 @@
+package main;
+/*****************************************************************************************
+ * @file  TupleSorter.java
+ *
+ * @author   John Miller
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/*****************************************************************************************
+ * The TupleSorter class sorts tuples on one or more columns, each ascending or
+ * descending (nulls first when ascending).  Inputs that fit the memory budget are
+ * sorted in memory; when the first sort column is a small integer type, its values are
+ * packed with the tuple positions into a long array of normalized keys, so most
+ * comparisons are primitive long comparisons instead of Comparable.compareTo calls.
+ * Larger inputs are sorted externally: sorted runs are written to spill files and then
+ * merged with a k-way merge.  All sorts are stable.
+ */
+class TupleSorter
+{
+    /** The positions of the sort columns
+     */
+    private final int [] cols;
+
+    /** Whether each sort column is sorted in descending order
+     */
+    private final boolean [] desc;
+
+    /** The domain of the first sort column
+     */
+    private final Class <?> firstDomain;
+
+    /** The comparator on all the sort columns
+     */
+    private final Comparator <Comparable []> comparator;
+
+    /*************************************************************************************
+     * Construct a sorter for the given sort columns.
+     * @param _cols         the positions of the sort columns
+     * @param _desc         whether each sort column is descending
+     * @param _firstDomain  the domain of the first sort column
+     */
+    TupleSorter (int [] _cols, boolean [] _desc, Class <?> _firstDomain)
+    {
+        cols        = _cols;
+        desc        = _desc;
+        firstDomain = _firstDomain;
+        comparator  = comparator (0);
+    } // constructor
+
+    /*************************************************************************************
+     * Return the comparator on all the sort columns.
+     * @return  the comparator
+     */
+    Comparator <Comparable []> comparator ()
+    {
+        return comparator;
+    } // comparator
+
+    /*************************************************************************************
+     * Sort the tuples, in memory if they fit the memory budget, else externally.
+     * @param tuples      the tuples to sort
+     * @param memoryRows  the memory budget in tuples
+     * @return  the sorted tuples
+     * @throws IOException  if a spill file cannot be written or read
+     */
+    List <Comparable []> sort (List <Comparable []> tuples, int memoryRows)
+                         throws IOException
+    {
+        return (tuples.size () <= memoryRows) ? sortInMemory (tuples)
+                                              : sortExternal (tuples, memoryRows);
+    } // sort
+
+    /*************************************************************************************
+     * Sort the tuples in memory, using normalized keys when possible.
+     * @param tuples  the tuples to sort
+     * @return  a sorted copy of the list of tuples
+     */
+    List <Comparable []> sortInMemory (List <Comparable []> tuples)
+    {
+        List <Comparable []> rows = new ArrayList <> (tuples);
+        if (! normalizable (rows)) {
+            rows.sort (comparator);
+            return rows;
+        } // if
+
+        var n    = rows.size ();
+        var keys = new long [n];
+        for (int i = 0; i < n; i++) {                                  // key in the high half, position in the low
+            var v = ((Number) rows.get (i) [cols [0]]).intValue ();
+            keys [i] = ((long) (desc [0] ? ~v : v) << 32) | i;
+        } // for
+        Arrays.sort (keys);                                            // primitive sort, stable by position
+
+        List <Comparable []> sorted = new ArrayList <> (n);
+        for (var k : keys) sorted.add (rows.get ((int) k));
+        if (cols.length > 1) {                                         // order ties on the other columns
+            var rest = comparator (1);
+            for (int lo = 0, hi; lo < n; lo = hi) {
+                for (hi = lo + 1; hi < n && (keys [hi] >>> 32) == (keys [lo] >>> 32); hi++) ;
+                if (hi - lo > 1) sorted.subList (lo, hi).sort (rest);
+            } // for
+        } // if
+        return sorted;
+    } // sortInMemory
+
+    /*************************************************************************************
+     * Return the first n tuples in sorted order (top-N), in a single pass keeping only
+     * the best n tuples seen so far in a bounded heap whose root is the worst of them.
+     * @param tuples  the tuples to select from
+     * @param n       the number of tuples to return
+     * @return  the first n tuples of the sorted order, sorted
+     */
+    List <Comparable []> top (List <Comparable []> tuples, int n)
+    {
+        if (n <= 0) return new ArrayList <> ();
+        Comparator <Integer> order = (i, j) -> {                       // sort order, ties by position
+            var c = comparator.compare (tuples.get (i), tuples.get (j));
+            return (c != 0) ? c : Integer.compare (i, j);
+        };
+        var heap = new PriorityQueue <Integer> (n + 1, order.reversed ());
+        for (int i = 0; i < tuples.size (); i++) {
+            if (heap.size () < n) {
+                heap.add (i);
+            } else if (comparator.compare (tuples.get (i), tuples.get (heap.peek ())) < 0) {
+                heap.poll ();                                          // evict the worst kept tuple
+                heap.add (i);
+            } // if
+        } // for
+
+        var kept = new ArrayList <> (heap);
+        kept.sort (order);
+        List <Comparable []> rows = new ArrayList <> (kept.size ());
+        for (int i : kept) rows.add (tuples.get (i));
+        return rows;
+    } // top
+
+    /*************************************************************************************
+     * Sort the tuples externally: sort runs of memoryRows tuples in memory, write each
+     * run to a spill file, and merge the runs.
+     * @param tuples      the tuples to sort
+     * @param memoryRows  the number of tuples per run
+     * @return  the sorted tuples
+     * @throws IOException  if a spill file cannot be written or read
+     */
+    List <Comparable []> sortExternal (List <Comparable []> tuples, int memoryRows)
+                         throws IOException
+    {
+        var runs = new ArrayList <SpillFile> ();
+        try {
+            for (int lo = 0; lo < tuples.size (); lo += memoryRows) {  // run generation
+                var run  = new SpillFile ("sort");
+                runs.add (run);
+                for (var t : sortInMemory (tuples.subList (lo, Math.min (lo + memoryRows, tuples.size ()))))
+                    run.write (t);
+            } // for
+            List <Comparable []> rows = new ArrayList <> (tuples.size ());
+            for (var it = merge (runs); it.hasNext (); ) rows.add (it.next ());
+            return rows;
+        } finally {
+            for (var run : runs) run.delete ();
+        } // try
+    } // sortExternal
+
+    /*************************************************************************************
+     * Merge sorted runs with a k-way merge, taking the smallest head tuple each time
+     * (the earlier run on ties, to keep the sort stable).
+     * @param runs  the sorted runs
+     * @return  an iterator over the merged tuples
+     * @throws IOException  if a run cannot be read
+     */
+    Iterator <Comparable []> merge (List <SpillFile> runs)
+                             throws IOException
+    {
+        var its  = new ArrayList <Iterator <Comparable []>> ();
+        for (var run : runs) its.add (run.read ());
+        var heads = new Comparable [runs.size ()][];
+        var heap  = new PriorityQueue <Integer> ((r1, r2) -> {
+            var c = comparator.compare (heads [r1], heads [r2]);
+            return (c != 0) ? c : Integer.compare (r1, r2);
+        });
+        for (int r = 0; r < its.size (); r++) {
+            if (its.get (r).hasNext ()) { heads [r] = its.get (r).next (); heap.add (r); }
+        } // for
+
+        return new Iterator <Comparable []> () {
+            public boolean hasNext ()
+            {
+                return ! heap.isEmpty ();
+            } // hasNext
+
+            public Comparable [] next ()
+            {
+                int r  = heap.poll ();
+                var t  = heads [r];
+                var it = its.get (r);
+                if (it.hasNext ()) { heads [r] = it.next (); heap.add (r); }
+                return t;
+            } // next
+        };
+    } // merge
+
+    /*************************************************************************************
+     * Determine whether normalized (long) keys can be used: the first sort column must
+     * hold non-null values of a type that fits in an int.
+     * @param rows  the tuples to sort
+     * @return  whether normalized keys can be used
+     */
+    private boolean normalizable (List <Comparable []> rows)
+    {
+        if (firstDomain != Integer.class && firstDomain != Short.class && firstDomain != Byte.class) return false;
+        for (var t : rows) if (t [cols [0]] == null) return false;
+        return true;
+    } // normalizable
+
+    /*************************************************************************************
+     * Return the comparator on the sort columns from the given one on.
+     * @param from  the first sort column to compare
+     * @return  the comparator
+     */
+    @SuppressWarnings("unchecked")
+    private Comparator <Comparable []> comparator (int from)
+    {
+        return (t1, t2) -> {
+            for (int j = from; j < cols.length; j++) {
+                var v1 = t1 [cols [j]];
+                var v2 = t2 [cols [j]];
+                var c  = (v1 == null) ? (v2 == null ? 0 : -1) : (v2 == null ? 1 : v1.compareTo (v2));
+                if (c != 0) return desc [j] ? -c : c;
+            } // for
+            return 0;
+        };
+    } // comparator
+
+} // TupleSorter class
@@ -0,0 +1,91 @@
+package main;
+/*****************************************************************************************
+ * @file  TupleSpliterator.java
+ *
+ * @author   John Miller
+ */
+
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/*****************************************************************************************
+ * The TupleSpliterator class splits a range of a table's tuple list for parallel
+ * streams.  It splits in half (so the chunks are even) until a chunk is no bigger than
+ * the given minimum chunk size, which the caller sets from the degree of parallelism,
+ * rather than relying on the splitting heuristic of the common pool.  Being ORDERED and
+ * SIZED, a parallel stream over it collects its results in tuple order.
+ */
+class TupleSpliterator
+      implements Spliterator <Comparable []>
+{
+    /** The tuples of the table
+     */
+    private final List <Comparable []> tuples;
+
+    /** The next position and the end (exclusive) of the range
+     */
+    private int lo, hi;
+
+    /** The chunk size below which the range is not split further
+     */
+    private final int chunk;
+
+    /*************************************************************************************
+     * Construct a spliterator over tuples [lo, hi).
+     * @param _tuples  the tuples of the table
+     * @param _lo      the first position
+     * @param _hi      the end position (exclusive)
+     * @param _chunk   the chunk size below which ranges are not split
+     */
+    TupleSpliterator (List <Comparable []> _tuples, int _lo, int _hi, int _chunk)
+    {
+        tuples = _tuples;
+        lo     = _lo;
+        hi     = _hi;
+        chunk  = Math.max (1, _chunk);
+    } // constructor
+
+    /*************************************************************************************
+     * Construct a spliterator over all the tuples, split into chunks so that each of
+     * the given number of threads gets about four of them (for load balancing).
+     * @param _tuples      the tuples of the table
+     * @param parallelism  the number of threads
+     */
+    TupleSpliterator (List <Comparable []> _tuples, int parallelism)
+    {
+        this (_tuples, 0, _tuples.size (), (_tuples.size () + 4 * parallelism - 1) / (4 * parallelism));
+    } // constructor
+
+    public boolean tryAdvance (Consumer <? super Comparable []> action)
+    {
+        if (lo >= hi) return false;
+        action.accept (tuples.get (lo++));
+        return true;
+    } // tryAdvance
+
+    public void forEachRemaining (Consumer <? super Comparable []> action)
+    {
+        for (; lo < hi; lo++) action.accept (tuples.get (lo));
+    } // forEachRemaining
+
+    public Spliterator <Comparable []> trySplit ()
+    {
+        if (hi - lo <= chunk) return null;
+        var mid    = (lo + hi) >>> 1;
+        var prefix = new TupleSpliterator (tuples, lo, mid, chunk);
+        lo = mid;
+        return prefix;
+    } // trySplit
+
+    public long estimateSize ()
+    {
+        return hi - lo;
+    } // estimateSize
+
+    public int characteristics ()
+    {
+        return ORDERED | SIZED | SUBSIZED | NONNULL;
+    } // characteristics
+
+} // TupleSpliterator class
@@ -0,0 +1,345 @@
+package main;
+/*****************************************************************************************
+ * @file  WriteAheadLog.java
+ *
+ * @author   John Miller
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+
+import static java.lang.System.out;
+
+/*****************************************************************************************
+ * The WriteAheadLog class provides an append-only log of data manipulation records
+ * (insert, and in the future update and delete) for a table.  Records are assigned
+ * increasing log sequence numbers (LSN's) and buffered in memory by append.  A caller
+ * makes its records durable by calling commit, which uses group commit: one thread
+ * (the leader) writes and fsyncs everything buffered so far, while threads arriving
+ * in the meantime wait and are covered by the leader's fsync or by the next one.
+ * <p>
+ * At a checkpoint the log is rotated into an archive file named after the last LSN it
+ * holds, which is deleted once the checkpoint is safely on disk, so the live log only
+ * holds the tail that recovery must replay.
+ * <p>
+ * Each record is framed as: length (int), CRC-32 of the body (int), then the body
+ * consisting of the LSN (long), the record type (byte) and the encoded tuple.
+ */
+class WriteAheadLog
+{
+    /** Record types
+     */
+    static final byte INSERT = 'I', UPDATE = 'U', DELETE = 'D';
+
+    /** The log file
+     */
+    private final File file;
+
+    /** The channel used to append to the log file
+     */
+    private FileChannel channel;
+
+    /** Records appended but not yet written to the log file
+     */
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream ();
+
+    /** The last LSN assigned
+     */
+    private long lastLsn;
+
+    /** The last LSN known to be on stable storage
+     */
+    private long durableLsn;
+
+    /** Whether some thread is currently writing and fsyncing the buffer
+     */
+    private boolean flushing = false;
+
+    /** The failure of a write or fsync (null if none): the records of that batch may be
+     *  lost, so the log refuses further appends and commits rather than report them
+     *  durable
+     */
+    private IOException failure;
+
+    /** The number of fsyncs performed (for performance testing)
+     */
+    private int syncCount = 0;
+
+    /*************************************************************************************
+     * Open (or create) the log file for appending.  The log should first be replayed
+     * to find the last LSN it holds.
+     * @param _file    the log file
+     * @param _lastLsn  the last LSN already in the log (or covered by the table file)
+     * @throws IOException  if the file cannot be opened
+     */
+    WriteAheadLog (File _file, long _lastLsn)
+           throws IOException
+    {
+        file       = _file;
+        lastLsn    = _lastLsn;
+        durableLsn = _lastLsn;
+        channel    = FileChannel.open (file.toPath (), StandardOpenOption.CREATE,
+                                       StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        syncDirectory (file.getAbsoluteFile ().getParentFile ());       // the log file is there after a crash
+    } // constructor
+
+    /*************************************************************************************
+     * Append a record to the in-memory log buffer.  The record is not durable until a
+     * commit covering its LSN returns.
+     * @param type  the record type (INSERT, UPDATE or DELETE)
+     * @param tup   the tuple the record is about
+     * @return  the LSN assigned to the record
+     * @throws IOException  if the tuple cannot be encoded
+     */
+    synchronized long append (byte type, Comparable [] tup)
+           throws IOException
+    {
+        return appendAll (type, Collections.singletonList (tup));
+    } // append
+
+    /*************************************************************************************
+     * Append a record for each of the tuples to the in-memory log buffer.  All the
+     * records are encoded before any is appended, so either all are appended or none.
+     * @param type  the record type (INSERT, UPDATE or DELETE)
+     * @param tups  the tuples the records are about
+     * @return  the LSN assigned to the last record
+     * @throws IOException  if a tuple cannot be encoded, or the log failed earlier
+     */
+    synchronized long appendAll (byte type, List <Comparable []> tups)
+           throws IOException
+    {
+        if (failure != null) throw new IOException ("WriteAheadLog: the log failed earlier", failure);
+        var frames = new ByteArrayOutputStream ();
+        var frame  = new DataOutputStream (frames);
+        var lsn    = lastLsn;
+        for (var tup : tups) {
+            var body = new ByteArrayOutputStream ();
+            var dos  = new DataOutputStream (body);
+            dos.writeLong (++lsn);
+            dos.writeByte (type);
+            TupleCodec.write (dos, tup);
+
+            var crc = new CRC32 ();
+            crc.update (body.toByteArray ());
+            frame.writeInt (body.size ());
+            frame.writeInt ((int) crc.getValue ());
+            body.writeTo (frame);
+        } // for
+        frames.writeTo (buffer);
+        lastLsn = lsn;
+        return lastLsn;
+    } // appendAll
+
+    /*************************************************************************************
+     * Once the log has failed, drop the records appended since the last durable one,
+     * which can no longer be made durable.
+     * @return  the number of records dropped (0 if the log has not failed or they were
+     *          dropped before)
+     */
+    synchronized int discard ()
+    {
+        if (failure == null) return 0;
+        var n = (int) (lastLsn - durableLsn);
+        lastLsn = durableLsn;
+        buffer.reset ();
+        return n;
+    } // discard
+
+    /*************************************************************************************
+     * Make all records up to and including the given LSN durable (group commit).  The
+     * buffered records are taken off the buffer before they are written, so if the write
+     * or fsync fails the log is marked failed: they cannot be retried safely (part of
+     * them may be in the file) and no later commit may report them durable.
+     * @param lsn  the LSN that must be on stable storage when this returns
+     * @throws IOException  if the write or fsync fails, or failed earlier
+     */
+    void commit (long lsn)
+         throws IOException
+    {
+        FileChannel ch;
+        byte []     batch;
+        long        upTo;
+        synchronized (this) {
+            while (durableLsn < lsn && flushing) {
+                try {
+                    wait ();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread ().interrupt ();
+                    throw new IOException ("commit: interrupted", ex);
+                } // try
+            } // while
+            if (durableLsn >= lsn) return;                          // covered by another thread's fsync
+            if (failure != null) throw new IOException ("WriteAheadLog: the log failed earlier", failure);
+            flushing = true;                                        // become the leader for this group
+            ch       = channel;
+            batch    = buffer.toByteArray ();
+            upTo     = lastLsn;
+            buffer.reset ();
+        } // synchronized
+
+        var done = false;
+        try {
+            var bb = ByteBuffer.wrap (batch);
+            while (bb.hasRemaining ()) ch.write (bb);
+            ch.force (false);
+            done = true;
+        } catch (IOException ex) {
+            synchronized (this) { failure = ex; }
+            throw ex;
+        } finally {
+            synchronized (this) {
+                flushing = false;
+                if (done) { durableLsn = upTo; syncCount++; }
+                notifyAll ();
+            } // synchronized
+        } // try
+    } // commit
+
+    /*************************************************************************************
+     * Rotate the log: make everything appended so far durable in the current log file,
+     * move that file to the archive file, and continue appending to a fresh log file.
+     * Used by checkpoints, so the archive holds exactly the records up to lastLsn and
+     * can be deleted once the checkpoint is on disk.
+     * @param archive  the file to move the current log file to
+     * @throws IOException  if the flush or the move fails
+     */
+    synchronized void rotate (File archive)
+                 throws IOException
+    {
+        while (flushing) {
+            try {
+                wait ();
+            } catch (InterruptedException ex) {
+                Thread.currentThread ().interrupt ();
+                throw new IOException ("rotate: interrupted", ex);
+            } // try
+        } // while
+        if (failure != null) throw new IOException ("WriteAheadLog: the log failed earlier", failure);
+        var bb = ByteBuffer.wrap (buffer.toByteArray ());
+        while (bb.hasRemaining ()) channel.write (bb);
+        channel.force (false);
+        buffer.reset ();
+        durableLsn = lastLsn;
+        channel.close ();
+        Files.move (file.toPath (), archive.toPath (), StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open (file.toPath (), StandardOpenOption.CREATE,
+                                    StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        syncDirectory (file.getAbsoluteFile ().getParentFile ());       // make the rename and new file durable
+        notifyAll ();
+    } // rotate
+
+    /*************************************************************************************
+     * Fsync a directory, so that files created or renamed in it survive a crash (syncing
+     * a file does not sync its directory entry).  Where directories cannot be opened for
+     * syncing (e.g., on Windows), nothing is done.
+     * @param dir  the directory to sync
+     * @throws IOException  if the directory cannot be synced
+     */
+    static void syncDirectory (File dir)
+           throws IOException
+    {
+        FileChannel ch;
+        try {
+            ch = FileChannel.open (dir.toPath (), StandardOpenOption.READ);
+        } catch (IOException ex) {
+            return;                                                     // not supported on this platform
+        } // try
+        try (ch) {
+            ch.force (true);
+        } // try
+    } // syncDirectory
+
+    /*************************************************************************************
+     * Return the last LSN assigned.
+     * @return  the last LSN
+     */
+    synchronized long lastLsn ()
+    {
+        return lastLsn;
+    } // lastLsn
+
+    /*************************************************************************************
+     * Return the number of fsyncs performed so far.
+     * @return  the number of fsyncs
+     */
+    synchronized int syncCount ()
+    {
+        return syncCount;
+    } // syncCount
+
+    /*************************************************************************************
+     * Close the log, after making all buffered records durable.
+     * @throws IOException  if the final flush fails
+     */
+    void close ()
+         throws IOException
+    {
+        commit (lastLsn ());
+        channel.close ();
+    } // close
+
+    /*************************************************************************************
+     * Replay the log file, passing each record with an LSN greater than fromLsn to the
+     * action.  Replay stops at the first torn or corrupt record (e.g., a partial write
+     * at the time of a crash) and the log is truncated there, so new records are not
+     * appended after garbage.
+     * @param file     the log file
+     * @param fromLsn  the LSN already reflected in the table file (the last checkpoint)
+     * @param action   what to do with each (type, tuple) record replayed
+     * @return  the last LSN found in the log (fromLsn if the log holds nothing newer)
+     * @throws IOException  if the log file cannot be read
+     */
+    static long replay (File file, long fromLsn, BiConsumer <Byte, Comparable []> action)
+           throws IOException
+    {
+        if (! file.exists ()) return fromLsn;
+
+        var lastLsn = fromLsn;
+        var good    = 0L;                                           // end of the last good record
+        try (var ch = FileChannel.open (file.toPath (), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            var size   = ch.size ();
+            var header = ByteBuffer.allocate (8);
+            while (good + 8 <= size) {
+                header.clear ();
+                ch.read (header, good);
+                header.flip ();
+                var len = header.getInt ();
+                var sum = header.getInt ();
+                if (len <= 0 || good + 8 + len > size) break;         // torn record
+
+                var body = ByteBuffer.allocate (len);
+                ch.read (body, good + 8);
+                var crc = new CRC32 ();
+                crc.update (body.array ());
+                if ((int) crc.getValue () != sum) break;                // corrupt record
+
+                var dis  = new DataInputStream (new ByteArrayInputStream (body.array ()));
+                var lsn  = dis.readLong ();
+                var type = dis.readByte ();
+                var tup  = TupleCodec.read (dis);
+                if (lsn > fromLsn) action.accept (type, tup);
+                lastLsn = Math.max (lastLsn, lsn);
+                good   += 8 + len;
+            } // while
+            if (good < size) {
+                out.println ("WriteAheadLog.replay: truncating torn tail of " + file + " at " + good);
+                ch.truncate (good);
+            } // if
+        } // try
+        return lastLsn;
+    } // replay
+
+} // WriteAheadLog class
@@ -0,0 +1,113 @@
+package main;
+/*****************************************************************************************
+ * @file  ZoneMap.java
+ *
+ * @author   John Miller
+ */
+
+import java.io.Serializable;
+import java.util.ArrayList;
+
+/*****************************************************************************************
+ * The ZoneMap class keeps, for each block of BLOCK consecutive tuples of a table, the
+ * minimum and maximum value and the number of nulls of every column.  A range selection
+ * can skip every block whose [min, max] range cannot overlap the range being selected,
+ * which for append-ordered data (ids, dates) means reading only a few blocks.
+ */
+class ZoneMap
+      implements Serializable
+{
+    /** The number of tuples per block
+     */
+    static final int BLOCK = 4096;
+
+    /** The minimum value of each column, per block
+     */
+    private final ArrayList <Comparable []> min = new ArrayList <> ();
+
+    /** The maximum value of each column, per block
+     */
+    private final ArrayList <Comparable []> max = new ArrayList <> ();
+
+    /** The number of null values of each column, per block
+     */
+    private final ArrayList <int []> nulls = new ArrayList <> ();
+
+    /** The number of columns
+     */
+    private final int nCols;
+
+    /*************************************************************************************
+     * Construct an empty zone map for tuples with the given number of columns.
+     * @param _nCols  the number of columns
+     */
+    ZoneMap (int _nCols)
+    {
+        nCols = _nCols;
+    } // constructor
+
+    /*************************************************************************************
+     * Update the summary of the block holding the given row for a new tuple.  Rows must
+     * be added in order.
+     * @param row  the position of the tuple in the table
+     * @param tup  the tuple
+     */
+    @SuppressWarnings("unchecked")
+    void add (int row, Comparable [] tup)
+    {
+        var b = row / BLOCK;
+        if (b == min.size ()) {
+            min.add (new Comparable [nCols]);
+            max.add (new Comparable [nCols]);
+            nulls.add (new int [nCols]);
+        } // if
+        var lo = min.get (b);
+        var hi = max.get (b);
+        for (int j = 0; j < nCols; j++) {
+            var v = tup [j];
+            if (v == null) { nulls.get (b) [j]++; continue; }
+            if (lo [j] == null || v.compareTo (lo [j]) < 0) lo [j] = v;
+            if (hi [j] == null || v.compareTo (hi [j]) > 0) hi [j] = v;
+        } // for
+    } // add
+
+    /*************************************************************************************
+     * Determine whether block b may hold a value of column j in the range [lo, hi].
+     * @param b   the block
+     * @param j   the column
+     * @param lo  the lower bound (inclusive), null for none
+     * @param hi  the upper bound (inclusive), null for none
+     * @return  false if no value in the block can be in the range
+     */
+    @SuppressWarnings("unchecked")
+    boolean mayContain (int b, int j, Comparable lo, Comparable hi)
+    {
+        var bMin = min.get (b) [j];
+        var bMax = max.get (b) [j];
+        if (bMin == null) return false;                               // only nulls
+        if (lo != null && bMax.compareTo (lo) < 0) return false;
+        if (hi != null && bMin.compareTo (hi) > 0) return false;
+        return true;
+    } // mayContain
+
+    /*************************************************************************************
+     * Return the number of nulls of column j in block b.
+     * @param b  the block
+     * @param j  the column
+     * @return  the null count
+     */
+    int nullCount (int b, int j)
+    {
+        return nulls.get (b) [j];
+    } // nullCount
+
+    /*************************************************************************************
+     * Return the number of blocks.
+     * @return  the number of blocks
+     */
+    int blocks ()
+    {
+        return min.size ();
+    } // blocks
+
+} // ZoneMap class